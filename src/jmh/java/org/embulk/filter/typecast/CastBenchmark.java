@@ -0,0 +1,280 @@
+package org.embulk.filter.typecast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.embulk.filter.typecast.cast.BooleanCast;
+import org.embulk.filter.typecast.cast.DoubleCast;
+import org.embulk.filter.typecast.cast.JsonCast;
+import org.embulk.filter.typecast.cast.LongCast;
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.filter.typecast.cast.TimestampCast;
+import org.embulk.spi.DataException;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Types;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.msgpack.value.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Casts of one value for every (input type, output type) pair which does not throw, plus the
+// invalid string paths and JsonNodeCaster, which is still used by the Jayway JSONPath fallback.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CastBenchmark
+{
+    private boolean booleanValue;
+    private long longValue;
+    private long longFlagValue;
+    private double doubleValue;
+    private String booleanString;
+    private String longString;
+    private String doubleString;
+    private String timestampString;
+    private String jsonString;
+    private String invalidString;
+    private Timestamp timestampValue;
+    private Value jsonValue;
+    private TimestampFormatter timestampFormatter;
+    private long[] longResult;
+    private double[] doubleResult;
+    private JsonNodeCaster jsonNodeCaster;
+    private JsonNode stringNode;
+    private JsonNode longNode;
+    private JsonNode doubleNode;
+    private JsonNode objectNode;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        booleanValue = true;
+        longValue = 1463084053L;
+        longFlagValue = 1L;
+        doubleValue = 1463084053.123456;
+        booleanString = "true";
+        longString = "1463084053";
+        doubleString = "1463084053.123456";
+        timestampString = "2016-05-12 20:14:13.123456 +0000";
+        jsonString = "{\"k1\":1,\"k2\":\"v\",\"k3\":[1,2,3]}";
+        invalidString = "foo";
+        timestampValue = Timestamp.ofEpochSecond(1463084053L, 123456000);
+        jsonValue = StringCast.asJson(jsonString);
+        timestampFormatter = TimestampFormatter.builder("%Y-%m-%d %H:%M:%S.%N %z", true)
+                .setDefaultZoneFromString("UTC")
+                .setDefaultDateFromString("1970-01-01").build();
+        longResult = new long[1];
+        doubleResult = new double[1];
+        jsonNodeCaster = new JsonNodeCaster();
+        ObjectMapper mapper = new ObjectMapper();
+        stringNode = mapper.readTree("\"1463084053\"");
+        longNode = mapper.readTree("1463084053");
+        doubleNode = mapper.readTree("1463084053.123456");
+        objectNode = mapper.readTree(jsonString);
+    }
+
+    @Benchmark
+    public boolean booleanToBoolean()
+    {
+        return BooleanCast.asBoolean(booleanValue);
+    }
+
+    @Benchmark
+    public long booleanToLong()
+    {
+        return BooleanCast.asLong(booleanValue);
+    }
+
+    @Benchmark
+    public String booleanToString()
+    {
+        return BooleanCast.asString(booleanValue);
+    }
+
+    @Benchmark
+    public boolean longToBoolean()
+    {
+        return LongCast.asBoolean(longFlagValue);
+    }
+
+    @Benchmark
+    public long longToLong()
+    {
+        return LongCast.asLong(longValue);
+    }
+
+    @Benchmark
+    public double longToDouble()
+    {
+        return LongCast.asDouble(longValue);
+    }
+
+    @Benchmark
+    public String longToString()
+    {
+        return LongCast.asString(longValue);
+    }
+
+    @Benchmark
+    public Timestamp longToTimestamp()
+    {
+        return LongCast.asTimestamp(longValue);
+    }
+
+    @Benchmark
+    public long doubleToLong()
+    {
+        return DoubleCast.asLong(doubleValue);
+    }
+
+    @Benchmark
+    public double doubleToDouble()
+    {
+        return DoubleCast.asDouble(doubleValue);
+    }
+
+    @Benchmark
+    public String doubleToString()
+    {
+        return DoubleCast.asString(doubleValue);
+    }
+
+    @Benchmark
+    public Timestamp doubleToTimestamp()
+    {
+        return DoubleCast.asTimestamp(doubleValue);
+    }
+
+    @Benchmark
+    public boolean stringToBoolean()
+    {
+        return StringCast.asBoolean(booleanString);
+    }
+
+    @Benchmark
+    public long stringToLong()
+    {
+        return StringCast.asLong(longString);
+    }
+
+    @Benchmark
+    public double stringToDouble()
+    {
+        return StringCast.asDouble(doubleString);
+    }
+
+    @Benchmark
+    public String stringToString()
+    {
+        return StringCast.asString(longString);
+    }
+
+    @Benchmark
+    public Timestamp stringToTimestamp()
+    {
+        return StringCast.asTimestamp(timestampString, timestampFormatter);
+    }
+
+    @Benchmark
+    public Value stringToJson()
+    {
+        return StringCast.asJson(jsonString);
+    }
+
+    @Benchmark
+    public void stringToLongInvalid(Blackhole blackhole)
+    {
+        try {
+            blackhole.consume(StringCast.asLong(invalidString));
+        }
+        catch (DataException ex) {
+            blackhole.consume(ex);
+        }
+    }
+
+    @Benchmark
+    public boolean tryStringToLongInvalid()
+    {
+        return StringCast.tryAsLong(invalidString, longResult);
+    }
+
+    @Benchmark
+    public boolean tryStringToDoubleInvalid()
+    {
+        return StringCast.tryAsDouble(invalidString, doubleResult);
+    }
+
+    @Benchmark
+    public long timestampToLong()
+    {
+        return TimestampCast.asLong(timestampValue);
+    }
+
+    @Benchmark
+    public double timestampToDouble()
+    {
+        return TimestampCast.asDouble(timestampValue);
+    }
+
+    @Benchmark
+    public String timestampToString()
+    {
+        return TimestampCast.asString(timestampValue, timestampFormatter);
+    }
+
+    @Benchmark
+    public Timestamp timestampToTimestamp()
+    {
+        return TimestampCast.asTimestamp(timestampValue);
+    }
+
+    @Benchmark
+    public String jsonToString()
+    {
+        return JsonCast.asString(jsonValue);
+    }
+
+    @Benchmark
+    public Value jsonToJson()
+    {
+        return JsonCast.asJson(jsonValue);
+    }
+
+    @Benchmark
+    public Object jsonNodeStringToLong()
+    {
+        return jsonNodeCaster.castTo(stringNode, Types.LONG, null);
+    }
+
+    @Benchmark
+    public Object jsonNodeLongToString()
+    {
+        return jsonNodeCaster.castTo(longNode, Types.STRING, null);
+    }
+
+    @Benchmark
+    public Object jsonNodeDoubleToLong()
+    {
+        return jsonNodeCaster.castTo(doubleNode, Types.LONG, null);
+    }
+
+    @Benchmark
+    public Object jsonNodeObjectToString()
+    {
+        return jsonNodeCaster.castTo(objectNode, Types.STRING, null);
+    }
+}
@@ -0,0 +1,231 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.msgpack.value.ValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Casts of one column through the filter, for every (input type, output type) pair of the plan
+// built by ColumnCaster. Pairs which cannot be cast measure the invalid value path, as
+// stop_on_invalid_record is false. Times are per record.
+//
+// Pairs of the same type, such as long to long, are not cast: the filter forwards pages as they are,
+// so that they measure the cost of forwarding pages, a baseline for the other pairs.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColumnCasterBenchmark
+{
+    private static final int RECORDS = 4096;
+
+    @Param({"boolean", "long", "double", "string", "timestamp", "json"})
+    public String inputType;
+
+    @Param({"boolean", "long", "double", "string", "timestamp", "json"})
+    public String outputType;
+
+    private final EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+    private final TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+    private Schema inputSchema;
+    private Schema outputSchema;
+    private TaskSource taskSource;
+    private List<Page> pages;
+
+    private static Type toType(String name)
+    {
+        switch (name) {
+            case "boolean":
+                return Types.BOOLEAN;
+            case "long":
+                return Types.LONG;
+            case "double":
+                return Types.DOUBLE;
+            case "string":
+                return Types.STRING;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            default:
+                return Types.JSON;
+        }
+    }
+
+    // runs action in an Embulk exec session of the test runtime
+    private void inSession(Runnable action) throws Throwable
+    {
+        runtime.apply(new Statement()
+        {
+            @Override
+            public void evaluate()
+            {
+                action.run();
+            }
+        }, Description.EMPTY).evaluate();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable
+    {
+        inputSchema = new Schema(Collections.singletonList(new Column(0, "col", toType(inputType))));
+        Map<String, String> column = new HashMap<>();
+        column.put("name", "col");
+        column.put("type", outputType);
+        ConfigSource config = ConfigMapperFactory.withDefault().newConfigSource();
+        config.set("columns", Collections.singletonList(column));
+        inSession(() -> plugin.transaction(config, inputSchema, (taskSource, outputSchema) -> {
+            this.taskSource = taskSource;
+            this.outputSchema = outputSchema;
+        }));
+    }
+
+    // input pages are released by the filter, so that they are built for each invocation
+    @Setup(Level.Invocation)
+    public void buildPages() throws Throwable
+    {
+        inSession(() -> pages = buildInputPages());
+    }
+
+    private List<Page> buildInputPages()
+    {
+        List<Page> built = new ArrayList<>();
+        PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), inputSchema, new CollectingOutput(built));
+        for (int i = 0; i < RECORDS; i++) {
+            switch (inputType) {
+                case "boolean":
+                    pageBuilder.setBoolean(0, i % 2 == 0);
+                    break;
+                case "long":
+                    pageBuilder.setLong(0, i % 2);
+                    break;
+                case "double":
+                    pageBuilder.setDouble(0, i + 0.5);
+                    break;
+                case "string":
+                    pageBuilder.setString(0, stringValue(i));
+                    break;
+                case "timestamp":
+                    pageBuilder.setTimestamp(0, Timestamp.ofEpochSecond(1463084053L + i, 123456000));
+                    break;
+                default:
+                    pageBuilder.setJson(0, ValueFactory.newMap(ValueFactory.newString("k"), ValueFactory.newInteger(i)));
+                    break;
+            }
+            pageBuilder.addRecord();
+        }
+        pageBuilder.finish();
+        pageBuilder.close();
+        return built;
+    }
+
+    // strings which can be cast to the output type
+    private String stringValue(int i)
+    {
+        switch (outputType) {
+            case "boolean":
+                return i % 2 == 0 ? "true" : "false";
+            case "long":
+                return String.valueOf(i);
+            case "double":
+                return i + ".5";
+            case "timestamp":
+                return String.format("2016-05-12 20:%02d:%02d.123456 +0000", i / 60 % 60, i % 60);
+            case "json":
+                return "{\"k\":" + i + "}";
+            default:
+                return "value" + i;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void cast() throws Throwable
+    {
+        inSession(() -> {
+            PageOutput output = plugin.open(taskSource, inputSchema, outputSchema, new DiscardingOutput());
+            for (Page page : pages) {
+                output.add(page);
+            }
+            output.finish();
+            output.close();
+        });
+    }
+
+    private static class CollectingOutput implements PageOutput
+    {
+        private final List<Page> pages;
+
+        CollectingOutput(List<Page> pages)
+        {
+            this.pages = pages;
+        }
+
+        @Override
+        public void add(Page page)
+        {
+            pages.add(page);
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private static class DiscardingOutput implements PageOutput
+    {
+        @Override
+        public void add(Page page)
+        {
+            page.release();
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
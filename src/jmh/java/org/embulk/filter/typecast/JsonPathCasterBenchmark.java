@@ -0,0 +1,99 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.filter.typecast.TypecastFilterPlugin.PluginTask;
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JSONPath casts of one json column value, at several document sizes and path counts.
+//
+// The document is {"k0":["0",0],"k1":["1",1],...}. "native" paths such as $.col.k0[0] are applied
+// by JsonPathTrie, "fallback" paths such as $.col.k0[0:1] by Jayway JsonPath.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonPathCasterBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int documentSize;
+
+    @Param({"1", "4", "16"})
+    public int pathCount;
+
+    @Param({"native", "fallback"})
+    public String pathKind;
+
+    private JsonPathCaster jsonPathCaster;
+    private Value document;
+    private String documentString;
+
+    @Setup
+    public void setup()
+    {
+        Value[] keyValues = new Value[documentSize * 2];
+        for (int i = 0; i < documentSize; i++) {
+            keyValues[i * 2] = ValueFactory.newString("k" + i);
+            keyValues[i * 2 + 1] = ValueFactory.newArray(ValueFactory.newString(String.valueOf(i)), ValueFactory.newInteger(i));
+        }
+        document = ValueFactory.newMap(keyValues);
+        documentString = document.toJson();
+
+        List<Map<String, String>> columnConfigs = new ArrayList<>();
+        for (int i = 0; i < pathCount; i++) {
+            // spread the paths over the document
+            int key = (int) ((long) i * documentSize / pathCount);
+            Map<String, String> columnConfig = new HashMap<>();
+            columnConfig.put("name", pathKind.equals("native") ? String.format("$.col.k%d[0]", key) : String.format("$.col.k%d[0:1]", key));
+            columnConfig.put("type", "long");
+            columnConfigs.add(columnConfig);
+        }
+        // the paths are compiled as the plugin does
+        ConfigMapperFactory configMapperFactory = ConfigMapperFactory.withDefault();
+        ConfigMapper configMapper = configMapperFactory.createConfigMapper();
+        ConfigSource config = configMapperFactory.newConfigSource().set("columns", columnConfigs);
+        PluginTask task = configMapper.map(config, PluginTask.class);
+        Schema inputSchema = new Schema(Collections.singletonList(new Column(0, "col", Types.JSON)));
+        ColumnConfigIndex columnConfigIndex = new ColumnConfigIndex(task, configMapper, inputSchema);
+        jsonPathCaster = new JsonPathCaster("col", columnConfigIndex.getJsonPathsMap().get("col"), false,
+                StringCast.DEFAULT_BOOLEAN_MATCHER);
+    }
+
+    @Benchmark
+    public Value castValue()
+    {
+        return jsonPathCaster.cast(document);
+    }
+
+    @Benchmark
+    public Value castString()
+    {
+        return jsonPathCaster.cast(documentString);
+    }
+}
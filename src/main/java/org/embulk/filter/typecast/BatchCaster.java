@@ -0,0 +1,582 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.spi.type.Type;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Casts columns of a page in batches, for batch_mode.
+//
+// Each column is cast by a BatchColumn of its (input type, output type) pair, chosen once per task,
+// so that no loop over cells tests types. A column is read in a pass of its own over the page into
+// a primitive array and a null bitmap, then cast by a loop which the JIT compiles to straight (often
+// vectorized) conversions. write() sets the cast values of one record while ColumnVisitorImpl
+// rebuilds rows.
+//
+// Each pass reads with a PageReader of its own, which is dropped without setting another page, as
+// setPage() releases the page it replaces. The reader of ColumnVisitorImpl is the only one which
+// moves from the page to the next, so that the page is released once, after all passes.
+//
+// Only casts between boolean, long, double and timestamp which cannot fail are batched, with the
+// same results as the casts of BooleanCast, LongCast, DoubleCast and TimestampCast. Other casts
+// stay row by row, as they build objects or report invalid values per cell.
+class BatchCaster
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Schema inputSchema;
+    private final PageBuilder pageBuilder;
+    private final CastMetrics castMetrics;
+    private final BatchColumn[] batchColumns;
+
+    BatchCaster(List<Column> inputColumns, Column[] outputColumns, Schema inputSchema, PageBuilder pageBuilder,
+                CastMetrics castMetrics)
+    {
+        this.inputSchema = inputSchema;
+        this.pageBuilder = pageBuilder;
+        this.castMetrics = castMetrics;
+        this.batchColumns = new BatchColumn[inputColumns.size()];
+        for (int i = 0; i < batchColumns.length; i++) {
+            Column inputColumn = inputColumns.get(i);
+            batchColumns[i] = newBatchColumn(inputColumn, outputColumns[inputColumn.getIndex()]);
+        }
+    }
+
+    static boolean isBatchable(Type inputType, Type outputType)
+    {
+        if (inputType instanceof BooleanType) {
+            return outputType instanceof BooleanType || outputType instanceof LongType;
+        }
+        else if (inputType instanceof LongType || inputType instanceof DoubleType) {
+            return outputType instanceof LongType || outputType instanceof DoubleType || outputType instanceof TimestampType;
+        }
+        else if (inputType instanceof TimestampType) {
+            return outputType instanceof LongType || outputType instanceof DoubleType;
+        }
+        return false;
+    }
+
+    // the pairs of isBatchable()
+    private BatchColumn newBatchColumn(Column inputColumn, Column outputColumn)
+    {
+        Type inputType = inputColumn.getType();
+        Type outputType = outputColumn.getType();
+        if (inputType instanceof BooleanType) {
+            if (outputType instanceof BooleanType) {
+                return new BooleanToBoolean(inputColumn, outputColumn);
+            }
+            return new BooleanToLong(inputColumn, outputColumn);
+        }
+        else if (inputType instanceof LongType) {
+            if (outputType instanceof LongType) {
+                return new LongToLong(inputColumn, outputColumn);
+            }
+            else if (outputType instanceof DoubleType) {
+                return new LongToDouble(inputColumn, outputColumn);
+            }
+            return new LongToTimestamp(inputColumn, outputColumn);
+        }
+        else if (inputType instanceof DoubleType) {
+            if (outputType instanceof LongType) {
+                return new DoubleToLong(inputColumn, outputColumn);
+            }
+            else if (outputType instanceof DoubleType) {
+                return new DoubleToDouble(inputColumn, outputColumn);
+            }
+            return new DoubleToTimestamp(inputColumn, outputColumn);
+        }
+        else if (outputType instanceof LongType) {
+            return new TimestampToLong(inputColumn, outputColumn);
+        }
+        return new TimestampToDouble(inputColumn, outputColumn);
+    }
+
+    // Reads and casts the records of the page, column by column
+    void cast(Page page)
+    {
+        for (BatchColumn column : batchColumns) {
+            long startNanos = System.nanoTime();
+            PageReader pageReader = new PageReader(inputSchema);
+            pageReader.setPage(page);
+            column.clear();
+            int count = column.read(pageReader);
+            column.cast(count);
+            castMetrics.addBatch(column.inputColumn.getIndex(), count - column.nullCount, column.nullCount,
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    // sets the cast values of the record-th record of the last cast()
+    void write(int record)
+    {
+        for (BatchColumn column : batchColumns) {
+            column.write(record);
+        }
+    }
+
+    private abstract class BatchColumn
+    {
+        final Column inputColumn;
+        final Column outputColumn;
+        long[] nulls = new long[INITIAL_CAPACITY / 64];
+        int nullCount;
+
+        BatchColumn(Column inputColumn, Column outputColumn)
+        {
+            this.inputColumn = inputColumn;
+            this.outputColumn = outputColumn;
+        }
+
+        void clear()
+        {
+            Arrays.fill(nulls, 0L);
+            nullCount = 0;
+        }
+
+        // reads the column of the records left in the reader, and returns the number of records read
+        abstract int read(PageReader pageReader);
+
+        // values of null cells are cast too, and ignored by write()
+        abstract void cast(int count);
+
+        abstract void write(int record);
+
+        // the capacity of the arrays of values, which grow with the null bitmap
+        int capacity(int record)
+        {
+            if (nulls.length * 64 <= record) {
+                nulls = Arrays.copyOf(nulls, nulls.length * 2);
+            }
+            return nulls.length * 64;
+        }
+
+        void setNull(int record)
+        {
+            nulls[record >>> 6] |= 1L << record;
+            nullCount++;
+        }
+
+        boolean isNull(int record)
+        {
+            return (nulls[record >>> 6] & (1L << record)) != 0;
+        }
+    }
+
+    private abstract class BooleanColumn extends BatchColumn
+    {
+        boolean[] values = new boolean[INITIAL_CAPACITY];
+
+        BooleanColumn(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        int read(PageReader pageReader)
+        {
+            int record = 0;
+            while (pageReader.nextRecord()) {
+                if (values.length <= record) {
+                    values = Arrays.copyOf(values, capacity(record));
+                }
+                if (pageReader.isNull(inputColumn)) {
+                    setNull(record);
+                }
+                else {
+                    values[record] = pageReader.getBoolean(inputColumn);
+                }
+                record++;
+            }
+            return record;
+        }
+    }
+
+    private abstract class LongColumn extends BatchColumn
+    {
+        long[] values = new long[INITIAL_CAPACITY];
+
+        LongColumn(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        int read(PageReader pageReader)
+        {
+            int record = 0;
+            while (pageReader.nextRecord()) {
+                if (values.length <= record) {
+                    values = Arrays.copyOf(values, capacity(record));
+                }
+                if (pageReader.isNull(inputColumn)) {
+                    setNull(record);
+                }
+                else {
+                    values[record] = pageReader.getLong(inputColumn);
+                }
+                record++;
+            }
+            return record;
+        }
+    }
+
+    private abstract class DoubleColumn extends BatchColumn
+    {
+        double[] values = new double[INITIAL_CAPACITY];
+
+        DoubleColumn(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        int read(PageReader pageReader)
+        {
+            int record = 0;
+            while (pageReader.nextRecord()) {
+                if (values.length <= record) {
+                    values = Arrays.copyOf(values, capacity(record));
+                }
+                if (pageReader.isNull(inputColumn)) {
+                    setNull(record);
+                }
+                else {
+                    values[record] = pageReader.getDouble(inputColumn);
+                }
+                record++;
+            }
+            return record;
+        }
+    }
+
+    private abstract class TimestampColumn extends BatchColumn
+    {
+        long[] seconds = new long[INITIAL_CAPACITY];
+        long[] nanos = new long[INITIAL_CAPACITY];
+
+        TimestampColumn(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        int read(PageReader pageReader)
+        {
+            int record = 0;
+            while (pageReader.nextRecord()) {
+                if (seconds.length <= record) {
+                    int capacity = capacity(record);
+                    seconds = Arrays.copyOf(seconds, capacity);
+                    nanos = Arrays.copyOf(nanos, capacity);
+                }
+                if (pageReader.isNull(inputColumn)) {
+                    setNull(record);
+                }
+                else {
+                    Timestamp value = pageReader.getTimestamp(inputColumn);
+                    seconds[record] = value.getEpochSecond();
+                    nanos[record] = value.getNano();
+                }
+                record++;
+            }
+            return record;
+        }
+    }
+
+    private final class BooleanToBoolean extends BooleanColumn
+    {
+        BooleanToBoolean(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setBoolean(outputColumn, values[record]);
+            }
+        }
+    }
+
+    private final class BooleanToLong extends BooleanColumn
+    {
+        private long[] output = new long[INITIAL_CAPACITY];
+
+        BooleanToLong(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+            if (output.length < count) {
+                output = new long[values.length];
+            }
+            for (int i = 0; i < count; i++) {
+                output[i] = values[i] ? 1 : 0;
+            }
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setLong(outputColumn, output[record]);
+            }
+        }
+    }
+
+    private final class LongToLong extends LongColumn
+    {
+        LongToLong(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setLong(outputColumn, values[record]);
+            }
+        }
+    }
+
+    private final class LongToDouble extends LongColumn
+    {
+        private double[] output = new double[INITIAL_CAPACITY];
+
+        LongToDouble(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+            if (output.length < count) {
+                output = new double[values.length];
+            }
+            for (int i = 0; i < count; i++) {
+                output[i] = (double) values[i];
+            }
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setDouble(outputColumn, output[record]);
+            }
+        }
+    }
+
+    // same as LongCast.asTimestamp, epoch seconds are the values as they are
+    private final class LongToTimestamp extends LongColumn
+    {
+        LongToTimestamp(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setTimestamp(outputColumn, Timestamp.ofEpochSecond(values[record], 0));
+            }
+        }
+    }
+
+    private final class DoubleToLong extends DoubleColumn
+    {
+        private long[] output = new long[INITIAL_CAPACITY];
+
+        DoubleToLong(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+            if (output.length < count) {
+                output = new long[values.length];
+            }
+            for (int i = 0; i < count; i++) {
+                output[i] = (long) values[i];
+            }
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setLong(outputColumn, output[record]);
+            }
+        }
+    }
+
+    private final class DoubleToDouble extends DoubleColumn
+    {
+        DoubleToDouble(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setDouble(outputColumn, values[record]);
+            }
+        }
+    }
+
+    // same as DoubleCast.asTimestamp
+    private final class DoubleToTimestamp extends DoubleColumn
+    {
+        private long[] outputSeconds = new long[INITIAL_CAPACITY];
+        private long[] outputNanos = new long[INITIAL_CAPACITY];
+
+        DoubleToTimestamp(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+            if (outputSeconds.length < count) {
+                outputSeconds = new long[values.length];
+                outputNanos = new long[values.length];
+            }
+            for (int i = 0; i < count; i++) {
+                long epochSecond = (long) values[i];
+                outputSeconds[i] = epochSecond;
+                outputNanos[i] = (long) ((values[i] - epochSecond) * 1000000000);
+            }
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setTimestamp(outputColumn, Timestamp.ofEpochSecond(outputSeconds[record], outputNanos[record]));
+            }
+        }
+    }
+
+    private final class TimestampToLong extends TimestampColumn
+    {
+        TimestampToLong(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setLong(outputColumn, seconds[record]);
+            }
+        }
+    }
+
+    // same as TimestampCast.asDouble
+    private final class TimestampToDouble extends TimestampColumn
+    {
+        private double[] output = new double[INITIAL_CAPACITY];
+
+        TimestampToDouble(Column inputColumn, Column outputColumn)
+        {
+            super(inputColumn, outputColumn);
+        }
+
+        @Override
+        void cast(int count)
+        {
+            if (output.length < count) {
+                output = new double[seconds.length];
+            }
+            for (int i = 0; i < count; i++) {
+                output[i] = seconds[i] + ((double) nanos[i] / 1000000000.0);
+            }
+        }
+
+        @Override
+        void write(int record)
+        {
+            if (isNull(record)) {
+                pageBuilder.setNull(outputColumn);
+            }
+            else {
+                pageBuilder.setDouble(outputColumn, output[record]);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.embulk.filter.typecast;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.embulk.spi.Column;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-column counters of one task: cells cast, nulls passed through, failures by cause, and
+// nanoseconds spent casting, estimated from one cell in SAMPLING_INTERVAL.
+//
+// Counters are plain array slots indexed by input column, so that they can be left on.
+// They are logged as one JSON line at the end of the task, and appended to metrics_path if set.
+class CastMetrics
+{
+    private static final Logger logger = LoggerFactory.getLogger(CastMetrics.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    static final int SAMPLING_INTERVAL = 64; // must be a power of two
+    static final int MAX_CAUSES = 16;
+    static final String OTHER_CAUSE = "other";
+
+    private final List<Column> castColumns;
+    private final long[] cells;
+    private final long[] nulls;
+    private final long[] sampledNanos;
+    private final long[] samples;
+    private final Map<String, Long>[] failures;
+
+    @SuppressWarnings("unchecked")
+    CastMetrics(List<Column> castColumns, int columnCount)
+    {
+        this.castColumns = castColumns;
+        this.cells = new long[columnCount];
+        this.nulls = new long[columnCount];
+        this.sampledNanos = new long[columnCount];
+        this.samples = new long[columnCount];
+        this.failures = new Map[columnCount];
+    }
+
+    void addNull(int columnIndex)
+    {
+        nulls[columnIndex]++;
+    }
+
+    // returns true if the time to cast this cell should be measured
+    boolean addCell(int columnIndex)
+    {
+        return (cells[columnIndex]++ & (SAMPLING_INTERVAL - 1)) == 0;
+    }
+
+    void addSampledNanos(int columnIndex, long nanos)
+    {
+        sampledNanos[columnIndex] += nanos;
+        samples[columnIndex]++;
+    }
+
+    // cells of a batch are all timed, so that they count as samples
+    void addBatch(int columnIndex, int cellCount, int nullCount, long nanos)
+    {
+        cells[columnIndex] += cellCount;
+        nulls[columnIndex] += nullCount;
+        sampledNanos[columnIndex] += nanos;
+        samples[columnIndex] += cellCount;
+    }
+
+    // adds counters of another visitor of the same task, except failures which are counted by the
+    // shared InvalidValueReporter
+    void merge(CastMetrics other)
+    {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] += other.cells[i];
+            nulls[i] += other.nulls[i];
+            sampledNanos[i] += other.sampledNanos[i];
+            samples[i] += other.samples[i];
+        }
+    }
+
+    // the cause is the message up to its first ':', such as "cannot cast String to long"
+    void addFailure(int columnIndex, String message)
+    {
+        addFailureCause(columnIndex, toCause(message));
+    }
+
+    void addFailureCause(int columnIndex, String cause)
+    {
+        Map<String, Long> causes = failures[columnIndex];
+        if (causes == null) {
+            causes = new LinkedHashMap<>();
+            failures[columnIndex] = causes;
+        }
+        if (!causes.containsKey(cause) && causes.size() >= MAX_CAUSES) {
+            cause = OTHER_CAUSE;
+        }
+        causes.merge(cause, 1L, Long::sum);
+    }
+
+    static String toCause(String message)
+    {
+        if (message == null) {
+            return OTHER_CAUSE;
+        }
+        int colon = message.indexOf(':');
+        return colon < 0 ? message : message.substring(0, colon);
+    }
+
+    long getCells(Column inputColumn)
+    {
+        return cells[inputColumn.getIndex()];
+    }
+
+    long getNulls(Column inputColumn)
+    {
+        return nulls[inputColumn.getIndex()];
+    }
+
+    Map<String, Long> getFailures(Column inputColumn)
+    {
+        Map<String, Long> causes = failures[inputColumn.getIndex()];
+        return causes == null ? new LinkedHashMap<>() : causes;
+    }
+
+    // nanoseconds for all cells, extrapolated from the sampled cells
+    long getEstimatedNanos(Column inputColumn)
+    {
+        int index = inputColumn.getIndex();
+        return samples[index] == 0 ? 0 : sampledNanos[index] * cells[index] / samples[index];
+    }
+
+    String toJson()
+    {
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        ArrayNode columns = root.putArray("columns");
+        for (Column inputColumn : castColumns) {
+            ObjectNode column = columns.addObject();
+            column.put("name", inputColumn.getName());
+            column.put("cells", getCells(inputColumn));
+            column.put("nulls", getNulls(inputColumn));
+            ObjectNode causes = column.putObject("failures");
+            for (Map.Entry<String, Long> entry : getFailures(inputColumn).entrySet()) {
+                causes.put(entry.getKey(), entry.getValue());
+            }
+            column.put("estimated_nanos", getEstimatedNanos(inputColumn));
+        }
+        return root.toString();
+    }
+
+    // Logs the metrics, and appends them to metricsPath as a line if it is not null
+    void report(String metricsPath)
+    {
+        String json = toJson();
+        logger.info("embulk-filter-typecast: metrics: {}", json);
+        if (metricsPath == null) {
+            return;
+        }
+        // tasks of the same process append to the same file
+        synchronized (CastMetrics.class) {
+            try {
+                Files.write(Paths.get(metricsPath), (json + "\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            catch (IOException ex) {
+                logger.warn(String.format("embulk-filter-typecast: failed to write metrics to \"%s\": %s", metricsPath, ex.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.DataException;
+
+// Casts the current record's value of one input column into its output column.
+// Instances are specialized per (input type, output type) at plan time.
+interface CellCaster
+{
+    void cast() throws DataException;
+}
@@ -1,17 +1,12 @@
 package org.embulk.filter.typecast;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.jayway.jsonpath.Configuration;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.Option;
-import com.jayway.jsonpath.PathNotFoundException;
-import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
+import org.embulk.config.ConfigException;
 import org.embulk.filter.typecast.TypecastFilterPlugin.PluginTask;
 import org.embulk.filter.typecast.TypecastFilterPlugin.TypecastColumnConfig;
 import org.embulk.filter.typecast.cast.BooleanCast;
+import org.embulk.filter.typecast.cast.BooleanMatcher;
 import org.embulk.filter.typecast.cast.DoubleCast;
+import org.embulk.filter.typecast.cast.EpochUnit;
 import org.embulk.filter.typecast.cast.JsonCast;
 import org.embulk.filter.typecast.cast.LongCast;
 import org.embulk.filter.typecast.cast.StringCast;
@@ -19,6 +14,7 @@ import org.embulk.filter.typecast.cast.TimestampCast;
 import org.embulk.spi.Column;
 import org.embulk.spi.DataException;
 import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
 import org.embulk.spi.time.Timestamp;
 import org.embulk.spi.type.BooleanType;
@@ -28,39 +24,50 @@ import org.embulk.spi.type.LongType;
 import org.embulk.spi.type.StringType;
 import org.embulk.spi.type.TimestampType;
 import org.embulk.spi.type.Type;
-import org.embulk.util.config.ConfigMapper;
 import org.embulk.util.config.units.ColumnConfig;
-import org.embulk.util.json.JsonParser;
 import org.embulk.util.timestamp.TimestampFormatter;
 import org.msgpack.value.Value;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 class ColumnCaster
 {
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private static final Configuration JSON_PATH_CONFIG = Configuration.builder().jsonProvider(new JacksonJsonNodeJsonProvider()).build();
-    private static final Configuration AS_PATH_LIST_CONFIG = Configuration.builder().options(Option.AS_PATH_LIST).build();
-
     private final PluginTask task;
-    private final ConfigMapper configMapper;
+    private final boolean stopOnInvalidRecord;
+    private final ColumnConfigIndex columnConfigIndex;
     private final Schema inputSchema;
+    private final PageReader pageReader;
     private final PageBuilder pageBuilder;
+    private final InvalidValueReporter invalidValueReporter;
+    private final InvalidValueReporter.Position position;
     private final HashMap<String, TimestampFormatter> timestampFormatterMap = new HashMap<>();
-    private final HashMap<String, List<JsonPath>> jsonPathMap = new HashMap<>();
-    private final HashMap<JsonPath, Type> jsonPathToTypeMap = new HashMap<>();
+    private final HashMap<String, FastTimestampParser> fastTimestampParserMap = new HashMap<>();
+    private final HashMap<String, FastTimestampFormatter> fastTimestampFormatterMap = new HashMap<>();
+    private final HashMap<String, BooleanMatcher> booleanMatcherMap = new HashMap<>();
+    private final HashMap<String, Integer> dedupCacheSizeMap = new HashMap<>();
+    private final HashMap<String, DoubleFormatter> doubleFormatterMap = new HashMap<>();
+    private final HashMap<String, EpochUnit> epochUnitMap = new HashMap<>();
+    private final HashMap<String, JsonPathCaster> jsonPathCasterMap = new HashMap<>();
+    private final HashSet<String> castColumnNames = new HashSet<>();
+    private final HashSet<String> lazyJsonColumnNames = new HashSet<>();
 
-    ColumnCaster(PluginTask task, ConfigMapper configMapper, Schema inputSchema,
-                 PageBuilder pageBuilder)
+    ColumnCaster(PluginTask task, ColumnConfigIndex columnConfigIndex, Schema inputSchema,
+                 PageReader pageReader, PageBuilder pageBuilder, InvalidValueReporter invalidValueReporter,
+                 InvalidValueReporter.Position position)
     {
         this.task = task;
-        this.configMapper = configMapper;
+        this.stopOnInvalidRecord = task.getStopOnInvalidRecord();
+        this.columnConfigIndex = columnConfigIndex;
         this.inputSchema = inputSchema;
+        this.pageReader = pageReader;
         this.pageBuilder = pageBuilder;
+        this.invalidValueReporter = invalidValueReporter;
+        this.position = position;
 
         buildColumnConfigMap();
     }
@@ -68,205 +75,449 @@ class ColumnCaster
     private void buildColumnConfigMap()
     {
         // columnName => TimestampFormatter
-        for (ColumnConfig columnConfig : task.getColumns().getColumns()) {
-            TypecastColumnConfig typecastColumnConfig = configMapper.map(columnConfig.getOption(), TypecastColumnConfig.class);
-            Column inputColumn;
-            if (JsonPathUtil.isProbablyJsonPath(columnConfig.getName())) {
-                String columnName = JsonPathUtil.getColumnName(columnConfig.getName());
-                List<JsonPath> jsonPaths = jsonPathMap.computeIfAbsent(columnName, k -> new ArrayList<>());
-                JsonPath jsonPath = JsonPath.compile(columnConfig.getName());
-                jsonPaths.add(jsonPath);
-                jsonPathToTypeMap.put(jsonPath, columnConfig.getType());
-                inputColumn = inputSchema.lookupColumn(columnName);
-            } else {
-                inputColumn = inputSchema.lookupColumn(columnConfig.getName());
+        for (ColumnConfigIndex.Entry entry : columnConfigIndex.getEntries()) {
+            ColumnConfig columnConfig = entry.getColumnConfig();
+            TypecastColumnConfig typecastColumnConfig = entry.getTypecastColumnConfig();
+            Column inputColumn = entry.getInputColumn();
+            castColumnNames.add(inputColumn.getName());
+            if (!entry.isJsonPath()) {
+                if (inputColumn.getType() instanceof StringType && columnConfig.getType() instanceof BooleanType) {
+                    this.booleanMatcherMap.put(columnConfig.getName(), createBooleanMatcher(task, typecastColumnConfig));
+                }
+                if (inputColumn.getType() instanceof DoubleType && columnConfig.getType() instanceof StringType) {
+                    DoubleFormatter doubleFormatter = createDoubleFormatter(task, typecastColumnConfig);
+                    if (doubleFormatter != null) {
+                        this.doubleFormatterMap.put(columnConfig.getName(), doubleFormatter);
+                    }
+                }
+                if (inputColumn.getType() instanceof StringType && columnConfig.getType() instanceof JsonType
+                        && typecastColumnConfig.getLazyJson()) {
+                    this.lazyJsonColumnNames.add(columnConfig.getName());
+                }
+                if (typecastColumnConfig.getUnit().isPresent()) {
+                    this.epochUnitMap.put(columnConfig.getName(), EpochUnit.of(typecastColumnConfig.getUnit().get()));
+                }
+                if (columnConfig.getType() instanceof StringType) {
+                    this.dedupCacheSizeMap.put(columnConfig.getName(),
+                            typecastColumnConfig.getDedupCacheSize().orElse(task.getDefaultDedupCacheSize()));
+                }
             }
             if ((inputColumn.getType() instanceof TimestampType && columnConfig.getType() instanceof StringType) ||
                     (inputColumn.getType() instanceof StringType && columnConfig.getType() instanceof TimestampType)) {
                 TimestampFormatter formatter = createTimestampFormatter(task, typecastColumnConfig);
                 this.timestampFormatterMap.put(columnConfig.getName(), formatter);
+                if (columnConfig.getType() instanceof TimestampType) {
+                    FastTimestampParser fastParser = createFastTimestampParser(task, typecastColumnConfig);
+                    if (fastParser != null) {
+                        this.fastTimestampParserMap.put(columnConfig.getName(), fastParser);
+                    }
+                } else {
+                    FastTimestampFormatter fastFormatter = createFastTimestampFormatter(task, typecastColumnConfig);
+                    if (fastFormatter != null) {
+                        this.fastTimestampFormatterMap.put(columnConfig.getName(), fastFormatter);
+                    }
+                }
             }
         }
+        // JSONPaths use the default vocabularies of booleans
+        BooleanMatcher defaultBooleanMatcher = createBooleanMatcher(task, null);
+        for (Map.Entry<String, JsonPathCaster.CompiledPaths> entry : columnConfigIndex.getJsonPathsMap().entrySet()) {
+            JsonPathCaster jsonPathCaster = new JsonPathCaster(entry.getKey(), entry.getValue(), task.getStopOnInvalidRecord(),
+                    defaultBooleanMatcher);
+            jsonPathCasterMap.put(entry.getKey(), jsonPathCaster);
+        }
+    }
+
+    // true if the column is configured by name or by JSONPath, false if it is passed through
+    boolean isCastColumn(Column inputColumn)
+    {
+        return castColumnNames.contains(inputColumn.getName());
+    }
+
+    // true if BatchCaster casts the column. Columns with a unit stay row by row, as they report
+    // values out of range
+    boolean isBatchable(Column inputColumn, Column outputColumn)
+    {
+        return BatchCaster.isBatchable(inputColumn.getType(), outputColumn.getType())
+                && !epochUnitMap.containsKey(outputColumn.getName());
     }
 
-    public void setFromBoolean(Column outputColumn, boolean value)
+    CellCaster[] buildCellCasters(Schema outputSchema)
+    {
+        CellCaster[] cellCasters = new CellCaster[inputSchema.getColumnCount()];
+        for (Column inputColumn : inputSchema.getColumns()) {
+            Column outputColumn = outputSchema.getColumn(inputColumn.getIndex());
+            cellCasters[inputColumn.getIndex()] = newCellCaster(inputColumn, outputColumn);
+        }
+        return cellCasters;
+    }
+
+    private CellCaster newCellCaster(Column inputColumn, Column outputColumn)
+    {
+        Type inputType = inputColumn.getType();
+        if (inputType instanceof BooleanType) {
+            return newFromBoolean(inputColumn, outputColumn);
+        } else if (inputType instanceof LongType) {
+            return newFromLong(inputColumn, outputColumn);
+        } else if (inputType instanceof DoubleType) {
+            return newFromDouble(inputColumn, outputColumn);
+        } else if (inputType instanceof StringType) {
+            return newFromString(inputColumn, outputColumn);
+        } else if (inputType instanceof TimestampType) {
+            return newFromTimestamp(inputColumn, outputColumn);
+        } else if (inputType instanceof JsonType) {
+            return newFromJson(inputColumn, outputColumn);
+        } else {
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", inputType));
+        }
+    }
+
+    private CellCaster newFromBoolean(final Column inputColumn, final Column outputColumn)
     {
         Type outputType = outputColumn.getType();
         if (outputType instanceof BooleanType) {
-            pageBuilder.setBoolean(outputColumn, BooleanCast.asBoolean(value));
+            return () -> pageBuilder.setBoolean(outputColumn, BooleanCast.asBoolean(pageReader.getBoolean(inputColumn)));
         } else if (outputType instanceof LongType) {
-            pageBuilder.setLong(outputColumn, BooleanCast.asLong(value));
+            return () -> pageBuilder.setLong(outputColumn, BooleanCast.asLong(pageReader.getBoolean(inputColumn)));
         } else if (outputType instanceof DoubleType) {
-            pageBuilder.setDouble(outputColumn, BooleanCast.asDouble(value));
+            return () -> pageBuilder.setDouble(outputColumn, BooleanCast.asDouble(pageReader.getBoolean(inputColumn)));
         } else if (outputType instanceof StringType) {
-            pageBuilder.setString(outputColumn, BooleanCast.asString(value));
+            return () -> pageBuilder.setString(outputColumn, BooleanCast.asString(pageReader.getBoolean(inputColumn)));
         } else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, BooleanCast.asTimestamp(value));
+            return () -> pageBuilder.setTimestamp(outputColumn, BooleanCast.asTimestamp(pageReader.getBoolean(inputColumn)));
         } else if (outputType instanceof JsonType) {
-            pageBuilder.setJson(outputColumn, BooleanCast.asJson(value));
+            return () -> pageBuilder.setJson(outputColumn, BooleanCast.asJson(pageReader.getBoolean(inputColumn)));
         } else {
-            assert (false);
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", outputType));
         }
     }
 
-    public void setFromLong(Column outputColumn, long value)
+    private CellCaster newFromLong(final Column inputColumn, final Column outputColumn)
     {
         Type outputType = outputColumn.getType();
         if (outputType instanceof BooleanType) {
-            pageBuilder.setBoolean(outputColumn, LongCast.asBoolean(value));
+            return () -> pageBuilder.setBoolean(outputColumn, LongCast.asBoolean(pageReader.getLong(inputColumn)));
         } else if (outputType instanceof LongType) {
-            pageBuilder.setLong(outputColumn, LongCast.asLong(value));
+            return () -> pageBuilder.setLong(outputColumn, LongCast.asLong(pageReader.getLong(inputColumn)));
         } else if (outputType instanceof DoubleType) {
-            pageBuilder.setDouble(outputColumn, LongCast.asDouble(value));
+            return () -> pageBuilder.setDouble(outputColumn, LongCast.asDouble(pageReader.getLong(inputColumn)));
         } else if (outputType instanceof StringType) {
-            pageBuilder.setString(outputColumn, LongCast.asString(value));
+            final StringDedupCache cache = newStringDedupCache(outputColumn);
+            if (cache.isEnabled()) {
+                return () -> {
+                    long value = pageReader.getLong(inputColumn);
+                    String casted = cache.get(value);
+                    if (casted == null) {
+                        casted = LongCast.asString(value);
+                        cache.put(value, casted);
+                    }
+                    pageBuilder.setString(outputColumn, casted);
+                };
+            }
+            return () -> pageBuilder.setString(outputColumn, LongCast.asString(pageReader.getLong(inputColumn)));
         } else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, LongCast.asTimestamp(value));
+            final EpochUnit unit = epochUnitMap.get(outputColumn.getName());
+            if (unit != null) {
+                return () -> pageBuilder.setTimestamp(outputColumn, LongCast.asTimestamp(pageReader.getLong(inputColumn), unit));
+            }
+            return () -> pageBuilder.setTimestamp(outputColumn, LongCast.asTimestamp(pageReader.getLong(inputColumn)));
         } else if (outputType instanceof JsonType) {
-            pageBuilder.setJson(outputColumn, LongCast.asJson(value));
+            return () -> pageBuilder.setJson(outputColumn, LongCast.asJson(pageReader.getLong(inputColumn)));
         } else {
-            assert false;
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", outputType));
         }
     }
 
-    public void setFromDouble(Column outputColumn, double value)
+    private CellCaster newFromDouble(final Column inputColumn, final Column outputColumn)
     {
         Type outputType = outputColumn.getType();
         if (outputType instanceof BooleanType) {
-            pageBuilder.setBoolean(outputColumn, DoubleCast.asBoolean(value));
+            return () -> pageBuilder.setBoolean(outputColumn, DoubleCast.asBoolean(pageReader.getDouble(inputColumn)));
         } else if (outputType instanceof LongType) {
-            pageBuilder.setLong(outputColumn, DoubleCast.asLong(value));
+            return () -> pageBuilder.setLong(outputColumn, DoubleCast.asLong(pageReader.getDouble(inputColumn)));
         } else if (outputType instanceof DoubleType) {
-            pageBuilder.setDouble(outputColumn, DoubleCast.asDouble(value));
+            return () -> pageBuilder.setDouble(outputColumn, DoubleCast.asDouble(pageReader.getDouble(inputColumn)));
         } else if (outputType instanceof StringType) {
-            pageBuilder.setString(outputColumn, DoubleCast.asString(value));
+            final DoubleFormatter doubleFormatter = doubleFormatterMap.get(outputColumn.getName());
+            final StringDedupCache cache = newStringDedupCache(outputColumn);
+            if (cache.isEnabled()) {
+                return () -> {
+                    double value = pageReader.getDouble(inputColumn);
+                    long key = StringDedupCache.doubleKey(value);
+                    String casted = cache.get(key);
+                    if (casted == null) {
+                        casted = doubleFormatter != null ? doubleFormatter.format(value) : DoubleCast.asString(value);
+                        cache.put(key, casted);
+                    }
+                    pageBuilder.setString(outputColumn, casted);
+                };
+            }
+            if (doubleFormatter != null) {
+                return () -> pageBuilder.setString(outputColumn, doubleFormatter.format(pageReader.getDouble(inputColumn)));
+            }
+            return () -> pageBuilder.setString(outputColumn, DoubleCast.asString(pageReader.getDouble(inputColumn)));
         } else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, DoubleCast.asTimestamp(value));
+            final EpochUnit unit = epochUnitMap.get(outputColumn.getName());
+            if (unit != null) {
+                return () -> pageBuilder.setTimestamp(outputColumn, DoubleCast.asTimestamp(pageReader.getDouble(inputColumn), unit));
+            }
+            return () -> pageBuilder.setTimestamp(outputColumn, DoubleCast.asTimestamp(pageReader.getDouble(inputColumn)));
         } else if (outputType instanceof JsonType) {
-            pageBuilder.setJson(outputColumn, DoubleCast.asJson(value));
+            return () -> pageBuilder.setJson(outputColumn, DoubleCast.asJson(pageReader.getDouble(inputColumn)));
         } else {
-            assert false;
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", outputType));
         }
     }
 
-    public void setFromString(Column outputColumn, String value)
+    private CellCaster newFromString(final Column inputColumn, final Column outputColumn)
     {
         Type outputType = outputColumn.getType();
         if (outputType instanceof BooleanType) {
-            pageBuilder.setBoolean(outputColumn, StringCast.asBoolean(value));
+            final BooleanMatcher booleanMatcher = booleanMatcherMap.get(outputColumn.getName());
+            final String cause = StringCast.buildErrorCause("boolean");
+            return () -> {
+                String value = pageReader.getString(inputColumn);
+                Boolean casted = booleanMatcher.match(value);
+                if (casted != null) {
+                    pageBuilder.setBoolean(outputColumn, casted);
+                } else {
+                    invalidString(inputColumn, outputColumn, "boolean", cause, value);
+                }
+            };
         } else if (outputType instanceof LongType) {
-            pageBuilder.setLong(outputColumn, StringCast.asLong(value));
+            final long[] casted = new long[1];
+            final ParseCache<Long> cache = new ParseCache<>(task.getParseCacheSize());
+            final String cause = StringCast.buildErrorCause("long");
+            return () -> {
+                String value = pageReader.getString(inputColumn);
+                if (cache.getLong(value, casted)) {
+                    pageBuilder.setLong(outputColumn, casted[0]);
+                } else if (StringCast.tryAsLong(value, casted)) {
+                    pageBuilder.setLong(outputColumn, casted[0]);
+                    cache.putLong(value, casted[0]);
+                } else {
+                    invalidString(inputColumn, outputColumn, "long", cause, value);
+                }
+            };
         } else if (outputType instanceof DoubleType) {
-            pageBuilder.setDouble(outputColumn, StringCast.asDouble(value));
+            final double[] casted = new double[1];
+            final ParseCache<Double> cache = new ParseCache<>(task.getParseCacheSize());
+            final String cause = StringCast.buildErrorCause("double");
+            return () -> {
+                String value = pageReader.getString(inputColumn);
+                if (cache.getDouble(value, casted)) {
+                    pageBuilder.setDouble(outputColumn, casted[0]);
+                } else if (StringCast.tryAsDouble(value, casted)) {
+                    pageBuilder.setDouble(outputColumn, casted[0]);
+                    cache.putDouble(value, casted[0]);
+                } else {
+                    invalidString(inputColumn, outputColumn, "double", cause, value);
+                }
+            };
         } else if (outputType instanceof StringType) {
-            pageBuilder.setString(outputColumn, StringCast.asString(value));
+            return () -> pageBuilder.setString(outputColumn, StringCast.asString(pageReader.getString(inputColumn)));
         } else if (outputType instanceof TimestampType) {
-            TimestampFormatter timestampParser = timestampFormatterMap.get(outputColumn.getName());
-            pageBuilder.setTimestamp(outputColumn, StringCast.asTimestamp(value, timestampParser));
+            final TimestampFormatter timestampParser = timestampFormatterMap.get(outputColumn.getName());
+            final FastTimestampParser fastParser = fastTimestampParserMap.get(outputColumn.getName());
+            final ParseCache<Timestamp> cache = new ParseCache<>(task.getParseCacheSize());
+            return () -> {
+                String value = pageReader.getString(inputColumn);
+                Timestamp casted = cache.get(value);
+                if (casted == null) {
+                    if (fastParser != null) {
+                        casted = fastParser.parse(value);
+                    }
+                    if (casted == null) {
+                        casted = StringCast.asTimestamp(value, timestampParser);
+                    }
+                    cache.put(value, casted);
+                }
+                pageBuilder.setTimestamp(outputColumn, casted);
+            };
         } else if (outputType instanceof JsonType) {
-            List<JsonPath> jsonPaths = jsonPathMap.get(outputColumn.getName());
-            Value castedValue;
-            if (jsonPaths != null && !jsonPaths.isEmpty()) {
-                castedValue = getCastedJsonValue(outputColumn, jsonPaths, value);
-            } else {
-                castedValue = StringCast.asJson(value);
+            final JsonPathCaster jsonPathCaster = jsonPathCasterMap.get(outputColumn.getName());
+            final ParseCache<Value> cache = new ParseCache<>(task.getJsonParseCacheSize());
+            // JSONPaths need the tree of values, so that a column with JSONPaths is not lazy
+            if (jsonPathCaster == null && lazyJsonColumnNames.contains(outputColumn.getName())) {
+                return () -> {
+                    String value = pageReader.getString(inputColumn);
+                    Value casted = cache.get(value);
+                    if (casted == null) {
+                        casted = StringCast.asLazyJson(value);
+                        cache.put(value, casted);
+                    }
+                    pageBuilder.setJson(outputColumn, casted);
+                };
             }
-            pageBuilder.setJson(outputColumn, castedValue);
+            return () -> {
+                String value = pageReader.getString(inputColumn);
+                Value casted = cache.get(value);
+                if (casted == null) {
+                    casted = jsonPathCaster != null ? jsonPathCaster.cast(value) : StringCast.asJson(value);
+                    cache.put(value, casted);
+                }
+                pageBuilder.setJson(outputColumn, casted);
+            };
         } else {
-            assert false;
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", outputType));
+        }
+    }
+
+    // The exception is built only if it stops the run. Otherwise the value is counted by its cause and
+    // set to null as ColumnVisitorImpl does for DataException, without capturing a stack trace, and
+    // the reporter builds the message only if it logs the value or writes it to the sink.
+    private void invalidString(Column inputColumn, Column outputColumn, String as, String cause, String value)
+    {
+        if (stopOnInvalidRecord) {
+            throw new DataException(StringCast.buildErrorMessage(as, value));
         }
+        invalidValueReporter.reportString(inputColumn, outputColumn, as, cause, value, position);
+        pageBuilder.setNull(outputColumn);
     }
 
-    public void setFromTimestamp(Column outputColumn, Timestamp value)
+    private CellCaster newFromTimestamp(final Column inputColumn, final Column outputColumn)
     {
         Type outputType = outputColumn.getType();
         if (outputType instanceof BooleanType) {
-            pageBuilder.setBoolean(outputColumn, TimestampCast.asBoolean(value));
+            return () -> pageBuilder.setBoolean(outputColumn, TimestampCast.asBoolean(pageReader.getTimestamp(inputColumn)));
         } else if (outputType instanceof LongType) {
-            pageBuilder.setLong(outputColumn, TimestampCast.asLong(value));
+            final EpochUnit unit = epochUnitMap.get(outputColumn.getName());
+            if (unit != null) {
+                return () -> pageBuilder.setLong(outputColumn, TimestampCast.asLong(pageReader.getTimestamp(inputColumn), unit));
+            }
+            return () -> pageBuilder.setLong(outputColumn, TimestampCast.asLong(pageReader.getTimestamp(inputColumn)));
         } else if (outputType instanceof DoubleType) {
-            pageBuilder.setDouble(outputColumn, TimestampCast.asDouble(value));
+            final EpochUnit unit = epochUnitMap.get(outputColumn.getName());
+            if (unit != null) {
+                return () -> pageBuilder.setDouble(outputColumn, TimestampCast.asDouble(pageReader.getTimestamp(inputColumn), unit));
+            }
+            return () -> pageBuilder.setDouble(outputColumn, TimestampCast.asDouble(pageReader.getTimestamp(inputColumn)));
         } else if (outputType instanceof StringType) {
-            TimestampFormatter timestampFormatter = timestampFormatterMap.get(outputColumn.getName());
-            pageBuilder.setString(outputColumn, TimestampCast.asString(value, timestampFormatter));
+            final TimestampFormatter timestampFormatter = timestampFormatterMap.get(outputColumn.getName());
+            final FastTimestampFormatter fastFormatter = fastTimestampFormatterMap.get(outputColumn.getName());
+            final StringDedupCache cache = newStringDedupCache(outputColumn);
+            if (cache.isEnabled()) {
+                return () -> {
+                    Timestamp value = pageReader.getTimestamp(inputColumn);
+                    long key = StringDedupCache.timestampKey(value.getEpochSecond(), value.getNano());
+                    String casted = key != Long.MIN_VALUE ? cache.get(key) : null;
+                    if (casted == null) {
+                        casted = fastFormatter != null ? fastFormatter.format(value) : null;
+                        if (casted == null) {
+                            casted = TimestampCast.asString(value, timestampFormatter);
+                        }
+                        if (key != Long.MIN_VALUE) {
+                            cache.put(key, casted);
+                        }
+                    }
+                    pageBuilder.setString(outputColumn, casted);
+                };
+            }
+            if (fastFormatter != null) {
+                return () -> {
+                    Timestamp value = pageReader.getTimestamp(inputColumn);
+                    String casted = fastFormatter.format(value);
+                    pageBuilder.setString(outputColumn, casted != null ? casted : TimestampCast.asString(value, timestampFormatter));
+                };
+            }
+            return () -> pageBuilder.setString(outputColumn, TimestampCast.asString(pageReader.getTimestamp(inputColumn), timestampFormatter));
         } else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, TimestampCast.asTimestamp(value));
+            return () -> pageBuilder.setTimestamp(outputColumn, TimestampCast.asTimestamp(pageReader.getTimestamp(inputColumn)));
         } else if (outputType instanceof JsonType) {
-            pageBuilder.setJson(outputColumn, TimestampCast.asJson(value));
+            return () -> pageBuilder.setJson(outputColumn, TimestampCast.asJson(pageReader.getTimestamp(inputColumn)));
         } else {
-            assert false;
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", outputType));
         }
     }
 
-    public void setFromJson(Column outputColumn, Value value)
+    private CellCaster newFromJson(final Column inputColumn, final Column outputColumn)
     {
-        List<JsonPath> jsonPaths = jsonPathMap.get(outputColumn.getName());
-        Value castedValue;
-        if (jsonPaths != null && !jsonPaths.isEmpty()) {
-            castedValue = getCastedJsonValue(outputColumn, jsonPaths, value.toJson());
-        } else {
-            castedValue = value;
+        final JsonPathCaster jsonPathCaster = jsonPathCasterMap.get(outputColumn.getName());
+        if (jsonPathCaster != null) {
+            return newFromJsonValue(outputColumn, () -> jsonPathCaster.cast(pageReader.getJson(inputColumn)));
         }
+        return newFromJsonValue(outputColumn, () -> pageReader.getJson(inputColumn));
+    }
 
+    private interface JsonValueSupplier
+    {
+        Value get();
+    }
+
+    private CellCaster newFromJsonValue(final Column outputColumn, final JsonValueSupplier value)
+    {
         Type outputType = outputColumn.getType();
         if (outputType instanceof BooleanType) {
-            pageBuilder.setBoolean(outputColumn, JsonCast.asBoolean(castedValue));
+            return () -> pageBuilder.setBoolean(outputColumn, JsonCast.asBoolean(value.get()));
         } else if (outputType instanceof LongType) {
-            pageBuilder.setLong(outputColumn, JsonCast.asLong(castedValue));
+            return () -> pageBuilder.setLong(outputColumn, JsonCast.asLong(value.get()));
         } else if (outputType instanceof DoubleType) {
-            pageBuilder.setDouble(outputColumn, JsonCast.asDouble(castedValue));
+            return () -> pageBuilder.setDouble(outputColumn, JsonCast.asDouble(value.get()));
         } else if (outputType instanceof StringType) {
-            pageBuilder.setString(outputColumn, JsonCast.asString(castedValue));
+            return () -> pageBuilder.setString(outputColumn, JsonCast.asString(value.get()));
         } else if (outputType instanceof TimestampType) {
-            pageBuilder.setTimestamp(outputColumn, JsonCast.asTimestamp(castedValue));
+            return () -> pageBuilder.setTimestamp(outputColumn, JsonCast.asTimestamp(value.get()));
         } else if (outputType instanceof JsonType) {
-            pageBuilder.setJson(outputColumn, JsonCast.asJson(castedValue));
+            return () -> pageBuilder.setJson(outputColumn, JsonCast.asJson(value.get()));
         } else {
-            assert false;
+            throw new ConfigException(String.format("embulk-filter-typecast: unsupported type: \"%s\"", outputType));
         }
     }
 
-    private Value getCastedJsonValue(Column outputColumn, List<JsonPath> jsonPaths, String json)
+    // BooleanCast.asString returns constants, so that only long, double and timestamp use the cache
+    private StringDedupCache newStringDedupCache(Column outputColumn)
     {
-        try {
-            JsonNode jsonNode = OBJECT_MAPPER.readTree(json);
-            ObjectNode wrapped = OBJECT_MAPPER.createObjectNode();
-            wrapped.set(outputColumn.getName(), jsonNode);
+        return new StringDedupCache(dedupCacheSizeMap.getOrDefault(outputColumn.getName(), 0));
+    }
 
-            for (JsonPath jsonPath : jsonPaths) {
-                try {
-                    JsonNode extracted = jsonPath.read(wrapped.toString(), JSON_PATH_CONFIG);
-                    if (extracted.isArray()) {
-                        List<String> matchPaths = jsonPath.read(wrapped.toString(), AS_PATH_LIST_CONFIG);
-                        Iterator<JsonNode> it = extracted.iterator();
-                        int i = 0;
-                        while (it.hasNext()) {
-                            JsonNode node = it.next();
-                            Object casted = new JsonNodeCaster().castTo(node, jsonPathToTypeMap.get(jsonPath), null);
-                            JsonPath.parse(wrapped, JSON_PATH_CONFIG).set(matchPaths.get(i), casted);
-                            i++;
-                        }
-                    } else {
-                        Object casted = new JsonNodeCaster().castTo(extracted, jsonPathToTypeMap.get(jsonPath), null);
-                        jsonPath.set(wrapped, casted, JSON_PATH_CONFIG);
-                    }
-                } catch (PathNotFoundException e) {
-                    if (task.getStopOnInvalidRecord()) {
-                        throw new DataException(e);
-                    }
-                }
-            }
-            JsonParser jsonParser = new JsonParser();
-            return jsonParser.parse(wrapped.get(outputColumn.getName()).toString());
-        } catch (IOException e) {
-            throw new DataException(e);
+    // columnConfig is null for the default vocabularies, throws ConfigException if they conflict
+    static BooleanMatcher createBooleanMatcher(PluginTask task, TypecastColumnConfig columnConfig)
+    {
+        Optional<List<String>> trueValues = task.getDefaultTrueValues();
+        Optional<List<String>> falseValues = task.getDefaultFalseValues();
+        boolean ignoreCase = task.getDefaultIgnoreCase();
+        if (columnConfig != null) {
+            trueValues = columnConfig.getTrueValues().isPresent() ? columnConfig.getTrueValues() : trueValues;
+            falseValues = columnConfig.getFalseValues().isPresent() ? columnConfig.getFalseValues() : falseValues;
+            ignoreCase = columnConfig.getIgnoreCase().orElse(ignoreCase);
+        }
+        if (!trueValues.isPresent() && !falseValues.isPresent() && !ignoreCase) {
+            return StringCast.DEFAULT_BOOLEAN_MATCHER;
         }
+        return new BooleanMatcher(trueValues.orElse(new ArrayList<>(StringCast.TRUE_STRINGS)),
+                falseValues.orElse(new ArrayList<>(StringCast.FALSE_STRINGS)), ignoreCase);
+    }
+
+    // returns null for the output of DoubleCast.asString, throws ConfigException if the options are invalid
+    static DoubleFormatter createDoubleFormatter(PluginTask task, TypecastColumnConfig columnConfig)
+    {
+        return DoubleFormatter.compile(columnConfig.getDoubleFormat().orElse(task.getDefaultDoubleFormat()),
+                columnConfig.getDecimals().orElse(null));
     }
 
-    private TimestampFormatter createTimestampFormatter(PluginTask task, TypecastColumnConfig columnConfig)
+    static TimestampFormatter createTimestampFormatter(PluginTask task, TypecastColumnConfig columnConfig)
     {
-        return TimestampFormatter.builder(columnConfig.getFormat().orElse(task.getDefaultTimestampFormat()), true)
+        return createTimestampFormatter(columnConfig.getFormat().orElse(task.getDefaultTimestampFormat()), task, columnConfig);
+    }
+
+    static TimestampFormatter createTimestampFormatter(String format, PluginTask task, TypecastColumnConfig columnConfig)
+    {
+        return TimestampFormatter.builder(format, true)
                 .setDefaultZoneFromString(columnConfig.getTimeZone().orElse(task.getDefaultTimeZone()))
                 .setDefaultDateFromString(columnConfig.getDate().orElse(task.getDefaultDate())).build();
     }
+
+    // returns null if the format is not a fixed layout which FastTimestampParser can read
+    private FastTimestampParser createFastTimestampParser(PluginTask task, TypecastColumnConfig columnConfig)
+    {
+        return FastTimestampParser.compile(columnConfig.getFormat().orElse(task.getDefaultTimestampFormat()),
+                columnConfig.getTimeZone().orElse(task.getDefaultTimeZone()));
+    }
+
+    // returns null if the format is not a fixed layout which FastTimestampFormatter can write
+    private FastTimestampFormatter createFastTimestampFormatter(PluginTask task, TypecastColumnConfig columnConfig)
+    {
+        return FastTimestampFormatter.compile(columnConfig.getFormat().orElse(task.getDefaultTimestampFormat()),
+                columnConfig.getTimeZone().orElse(task.getDefaultTimeZone()));
+    }
 }
@@ -0,0 +1,122 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.filter.typecast.TypecastFilterPlugin.PluginTask;
+import org.embulk.filter.typecast.TypecastFilterPlugin.TypecastColumnConfig;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.util.config.ConfigMapper;
+import org.embulk.util.config.units.ColumnConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The configured columns, indexed by column name once.
+//
+// Each ColumnConfig is mapped to its TypecastColumnConfig and looked up in the input schema here,
+// and JSONPaths are compiled once per column with the formats of their timestamps, so that planning
+// is linear in the number of columns and configs. The transaction plans the output schema with one
+// index, and the visitors of a task, such as the workers of parallelism, share the one built in open().
+class ColumnConfigIndex
+{
+    private final List<Entry> entries = new ArrayList<>();
+    // columnName => the first config of the column by name
+    private final HashMap<String, Entry> entryMap = new HashMap<>();
+    // columnName => JSONPaths of the column, in the configured order
+    private final LinkedHashMap<String, JsonPathCaster.CompiledPaths> jsonPathsMap = new LinkedHashMap<>();
+
+    // throws ConfigException if a column does not exist or a JSONPath is invalid
+    ColumnConfigIndex(PluginTask task, ConfigMapper configMapper, Schema inputSchema)
+    {
+        HashMap<String, Column> inputColumnMap = new HashMap<>();
+        for (Column inputColumn : inputSchema.getColumns()) {
+            inputColumnMap.putIfAbsent(inputColumn.getName(), inputColumn);
+        }
+        LinkedHashMap<String, List<ColumnConfig>> jsonPathConfigMap = new LinkedHashMap<>();
+        // columnName => formats of the JSONPaths of the column, null for other types than timestamp
+        HashMap<String, List<JsonTimestampFormat>> timestampFormatMap = new HashMap<>();
+        for (ColumnConfig columnConfig : task.getColumns().getColumns()) {
+            String name = columnConfig.getName();
+            boolean jsonPath = JsonPathUtil.isProbablyJsonPath(name);
+            String columnName = jsonPath ? JsonPathUtil.getColumnNameOfValidPath(name) : name;
+            Column inputColumn = inputColumnMap.get(columnName);
+            if (inputColumn == null) {
+                inputColumn = inputSchema.lookupColumn(columnName); // throws as the column does not exist
+            }
+            TypecastColumnConfig typecastColumnConfig = configMapper.map(columnConfig.getOption(), TypecastColumnConfig.class);
+            Entry entry = new Entry(columnConfig, typecastColumnConfig, inputColumn, jsonPath);
+            entries.add(entry);
+            if (jsonPath) {
+                jsonPathConfigMap.computeIfAbsent(columnName, k -> new ArrayList<>()).add(columnConfig);
+                timestampFormatMap.computeIfAbsent(columnName, k -> new ArrayList<>()).add(
+                        columnConfig.getType() instanceof TimestampType ? JsonTimestampFormat.create(task, typecastColumnConfig) : null);
+            }
+            else {
+                entryMap.putIfAbsent(columnName, entry);
+            }
+        }
+        for (Map.Entry<String, List<ColumnConfig>> jsonPathConfigs : jsonPathConfigMap.entrySet()) {
+            jsonPathsMap.put(jsonPathConfigs.getKey(), JsonPathCaster.compile(jsonPathConfigs.getValue(),
+                    timestampFormatMap.get(jsonPathConfigs.getKey())));
+        }
+    }
+
+    // configs by name and by JSONPath, in the configured order
+    List<Entry> getEntries()
+    {
+        return Collections.unmodifiableList(entries);
+    }
+
+    // returns the first config of the column by name, or null
+    Entry getEntry(String columnName)
+    {
+        return entryMap.get(columnName);
+    }
+
+    // columnName => compiled JSONPaths of the column
+    Map<String, JsonPathCaster.CompiledPaths> getJsonPathsMap()
+    {
+        return Collections.unmodifiableMap(jsonPathsMap);
+    }
+
+    static final class Entry
+    {
+        private final ColumnConfig columnConfig;
+        private final TypecastColumnConfig typecastColumnConfig;
+        private final Column inputColumn;
+        private final boolean jsonPath;
+
+        private Entry(ColumnConfig columnConfig, TypecastColumnConfig typecastColumnConfig, Column inputColumn, boolean jsonPath)
+        {
+            this.columnConfig = columnConfig;
+            this.typecastColumnConfig = typecastColumnConfig;
+            this.inputColumn = inputColumn;
+            this.jsonPath = jsonPath;
+        }
+
+        ColumnConfig getColumnConfig()
+        {
+            return columnConfig;
+        }
+
+        TypecastColumnConfig getTypecastColumnConfig()
+        {
+            return typecastColumnConfig;
+        }
+
+        // the column of the name, or the json column of the JSONPath
+        Column getInputColumn()
+        {
+            return inputColumn;
+        }
+
+        boolean isJsonPath()
+        {
+            return jsonPath;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.JsonType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.StringType;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.spi.type.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Copies columns which are not cast as is. Columns are grouped by type at plan time
+// so that copying the current record needs neither a type dispatch nor a cast call.
+class ColumnCopier
+{
+    private final PageReader pageReader;
+    private final PageBuilder pageBuilder;
+    private final Column[] booleanColumns;
+    private final Column[] longColumns;
+    private final Column[] doubleColumns;
+    private final Column[] stringColumns;
+    private final Column[] timestampColumns;
+    private final Column[] jsonColumns;
+
+    ColumnCopier(List<Column> columns, PageReader pageReader, PageBuilder pageBuilder)
+    {
+        this.pageReader = pageReader;
+        this.pageBuilder = pageBuilder;
+        this.booleanColumns = filterByType(columns, BooleanType.class);
+        this.longColumns = filterByType(columns, LongType.class);
+        this.doubleColumns = filterByType(columns, DoubleType.class);
+        this.stringColumns = filterByType(columns, StringType.class);
+        this.timestampColumns = filterByType(columns, TimestampType.class);
+        this.jsonColumns = filterByType(columns, JsonType.class);
+    }
+
+    private static Column[] filterByType(List<Column> columns, Class<? extends Type> typeClass)
+    {
+        List<Column> filtered = new ArrayList<>();
+        for (Column column : columns) {
+            if (typeClass.isInstance(column.getType())) {
+                filtered.add(column);
+            }
+        }
+        return filtered.toArray(new Column[0]);
+    }
+
+    void copy()
+    {
+        for (Column column : booleanColumns) {
+            if (pageReader.isNull(column)) {
+                pageBuilder.setNull(column);
+            }
+            else {
+                pageBuilder.setBoolean(column, pageReader.getBoolean(column));
+            }
+        }
+        for (Column column : longColumns) {
+            if (pageReader.isNull(column)) {
+                pageBuilder.setNull(column);
+            }
+            else {
+                pageBuilder.setLong(column, pageReader.getLong(column));
+            }
+        }
+        for (Column column : doubleColumns) {
+            if (pageReader.isNull(column)) {
+                pageBuilder.setNull(column);
+            }
+            else {
+                pageBuilder.setDouble(column, pageReader.getDouble(column));
+            }
+        }
+        for (Column column : stringColumns) {
+            if (pageReader.isNull(column)) {
+                pageBuilder.setNull(column);
+            }
+            else {
+                pageBuilder.setString(column, pageReader.getString(column));
+            }
+        }
+        for (Column column : timestampColumns) {
+            if (pageReader.isNull(column)) {
+                pageBuilder.setNull(column);
+            }
+            else {
+                pageBuilder.setTimestamp(column, pageReader.getTimestamp(column));
+            }
+        }
+        for (Column column : jsonColumns) {
+            if (pageReader.isNull(column)) {
+                pageBuilder.setNull(column);
+            }
+            else {
+                pageBuilder.setJson(column, pageReader.getJson(column));
+            }
+        }
+    }
+}
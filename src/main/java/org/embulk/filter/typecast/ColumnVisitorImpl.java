@@ -2,126 +2,212 @@ package org.embulk.filter.typecast;
 
 import org.embulk.filter.typecast.TypecastFilterPlugin.PluginTask;
 import org.embulk.spi.Column;
-import org.embulk.spi.ColumnVisitor;
 import org.embulk.spi.DataException;
+import org.embulk.spi.Page;
 import org.embulk.spi.PageBuilder;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
-import org.embulk.util.config.ConfigMapper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.StringType;
+import org.embulk.spi.type.TimestampType;
+import org.embulk.spi.type.Type;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
-class ColumnVisitorImpl implements ColumnVisitor
+class ColumnVisitorImpl
 {
-    private static final Logger logger = LoggerFactory.getLogger(ColumnVisitorImpl.class);
-
     private final PluginTask task;
+    private final boolean stopOnInvalidRecord;
     private final Schema inputSchema;
     private final Schema outputSchema;
     private final PageReader pageReader;
     private final PageBuilder pageBuilder;
-    private final HashMap<String, Column> outputColumnMap = new HashMap<>();
-    private final ColumnCaster columnCaster;
-
-    ColumnVisitorImpl(PluginTask task, ConfigMapper configMapper, Schema inputSchema, Schema outputSchema,
+    private final Column[] outputColumns;
+    private final CellCaster[] cellCasters;
+    private final Column[] castColumns;
+    private final ColumnCopier columnCopier;
+    private final BatchCaster batchCaster;
+    private final InvalidValueReporter invalidValueReporter;
+    private final boolean ownsInvalidValueReporter;
+    private final InvalidValueReporter.Position position = new InvalidValueReporter.Position();
+    private final CastMetrics castMetrics;
+
+    ColumnVisitorImpl(PluginTask task, ColumnConfigIndex columnConfigIndex, Schema inputSchema, Schema outputSchema,
                       PageReader pageReader, PageBuilder pageBuilder)
+    {
+        this(task, columnConfigIndex, inputSchema, outputSchema, pageReader, pageBuilder, null);
+    }
+
+    // A visitor of a worker shares the InvalidValueReporter of the primary visitor, so that invalid
+    // values are sampled and counted once per task, and written to one sink. Its CastMetrics is
+    // merged by mergeMetrics().
+    ColumnVisitorImpl(PluginTask task, ColumnConfigIndex columnConfigIndex, Schema inputSchema, Schema outputSchema,
+                      PageReader pageReader, PageBuilder pageBuilder, ColumnVisitorImpl primary)
     {
         this.task         = task;
+        this.stopOnInvalidRecord = task.getStopOnInvalidRecord();
         this.inputSchema  = inputSchema;
         this.outputSchema = outputSchema;
         this.pageReader   = pageReader;
         this.pageBuilder  = pageBuilder;
-
-        this.columnCaster = new ColumnCaster(task, configMapper, inputSchema, pageBuilder);
-
-        buildOutputColumnMap();
+        List<Column> castColumnList = new ArrayList<>();
+        this.castMetrics = new CastMetrics(castColumnList, inputSchema.getColumnCount());
+        this.ownsInvalidValueReporter = primary == null;
+        this.invalidValueReporter = primary != null ? primary.invalidValueReporter : new InvalidValueReporter(inputSchema,
+                task.getMaxInvalidValueSamples(), task.getInvalidValueSampleLength(), task.getInvalidValueReportInterval(),
+                castMetrics, createInvalidValueSink(task));
+
+        // columnIndex => CellCaster, compiled once per task
+        ColumnCaster columnCaster = new ColumnCaster(task, columnConfigIndex, inputSchema, pageReader, pageBuilder,
+                invalidValueReporter, position);
+        this.cellCasters = columnCaster.buildCellCasters(outputSchema);
+        this.outputColumns = outputSchema.getColumns().toArray(new Column[0]);
+
+        List<Column> passThroughColumnList = new ArrayList<>();
+        List<Column> rowColumnList = new ArrayList<>();
+        List<Column> batchColumnList = new ArrayList<>();
+        for (Column inputColumn : inputSchema.getColumns()) {
+            if (columnCaster.isCastColumn(inputColumn)) {
+                castColumnList.add(inputColumn);
+                if (task.getBatchMode() && columnCaster.isBatchable(inputColumn, outputColumns[inputColumn.getIndex()])) {
+                    batchColumnList.add(inputColumn);
+                }
+                else {
+                    rowColumnList.add(inputColumn);
+                }
+            }
+            else {
+                passThroughColumnList.add(inputColumn);
+            }
+        }
+        // columns cast row by row, the others are cast by batchCaster
+        this.castColumns = rowColumnList.toArray(new Column[0]);
+        this.columnCopier = new ColumnCopier(passThroughColumnList, pageReader, pageBuilder);
+        this.batchCaster = batchColumnList.isEmpty() ? null
+                : new BatchCaster(batchColumnList, outputColumns, inputSchema, pageBuilder, castMetrics);
     }
 
-    private void buildOutputColumnMap()
+    // invalid values are written only if they do not stop the run
+    private static InvalidValueSink createInvalidValueSink(PluginTask task)
     {
-        for (Column column : inputSchema.getColumns()) {
-            this.outputColumnMap.put(column.getName(), column);
-        }
-        // override typecasted column
-        for (Column column : outputSchema.getColumns()) {
-            this.outputColumnMap.put(column.getName(), column);
+        if (task.getStopOnInvalidRecord() || !task.getInvalidValuePath().isPresent()) {
+            return null;
         }
+        return InvalidValueSink.acquire(task.getInvalidValuePath().get(), task.getInvalidValueQueueSize(),
+                "block".equals(task.getInvalidValueQueueFull()));
     }
 
-    private interface PageBuildable
+    // Casts the records of the page into pageBuilder. The page index is the position of the page in
+    // the task, which invalid values are reported with.
+    void visitPage(Page page, long pageIndex)
     {
-        void run() throws DataException;
+        if (batchCaster != null) {
+            batchCaster.cast(page);
+        }
+        position.page = pageIndex;
+        pageReader.setPage(page);
+        for (int i = 0; pageReader.nextRecord(); i++) {
+            position.record = i;
+            visitRecord(i);
+            pageBuilder.addRecord();
+        }
     }
 
-    private void withStopOnInvalidRecord(final PageBuildable op, final Column inputColumn, final Column outputColumn)
-            throws DataException
+    // Copies columns which are not configured as is, and casts only configured columns
+    private void visitRecord(int record)
     {
-        if (pageReader.isNull(inputColumn)) {
-            pageBuilder.setNull(outputColumn);
+        columnCopier.copy();
+        if (batchCaster != null) {
+            batchCaster.write(record);
         }
-        else {
-            if (task.getStopOnInvalidRecord()) {
-                op.run();
-            }
-            else {
-                try {
-                    op.run();
-                }
-                catch (final DataException ex) {
-                    logger.warn(ex.getMessage());
-                    pageBuilder.setNull(outputColumn);
-                }
-            }
+        for (Column inputColumn : castColumns) {
+            withStopOnInvalidRecord(inputColumn);
         }
     }
 
-    @Override
-    public void booleanColumn(final Column inputColumn)
+    // Logs the summary of invalid values and the cast metrics at the end of the task, and writes
+    // the invalid values left in the queue of the sink
+    void finish()
     {
-        final Column outputColumn = outputColumnMap.get(inputColumn.getName());
-        PageBuildable op = () -> columnCaster.setFromBoolean(outputColumn, pageReader.getBoolean(inputColumn));
-        withStopOnInvalidRecord(op, inputColumn, outputColumn);
+        invalidValueReporter.summarize();
+        castMetrics.report(task.getMetricsPath().orElse(null));
+        close();
     }
 
-    @Override
-    public void longColumn(final Column inputColumn)
+    // Releases the sink of invalid values if the visitor is the primary one. It may be called after finish()
+    void close()
     {
-        final Column outputColumn = outputColumnMap.get(inputColumn.getName());
-        PageBuildable op = () -> columnCaster.setFromLong(outputColumn, pageReader.getLong(inputColumn));
-        withStopOnInvalidRecord(op, inputColumn, outputColumn);
+        if (ownsInvalidValueReporter) {
+            invalidValueReporter.close();
+        }
     }
 
-    @Override
-    public void doubleColumn(final Column inputColumn)
+    void mergeMetrics(ColumnVisitorImpl worker)
     {
-        final Column outputColumn = outputColumnMap.get(inputColumn.getName());
-        PageBuildable op = () -> columnCaster.setFromDouble(outputColumn, pageReader.getDouble(inputColumn));
-        withStopOnInvalidRecord(op, inputColumn, outputColumn);
+        castMetrics.merge(worker.castMetrics);
     }
 
-    @Override
-    public void stringColumn(final Column inputColumn)
+    private void withStopOnInvalidRecord(final Column inputColumn)
+            throws DataException
     {
-        final Column outputColumn = outputColumnMap.get(inputColumn.getName());
-        PageBuildable op = () -> columnCaster.setFromString(outputColumn, pageReader.getString(inputColumn));
-        withStopOnInvalidRecord(op, inputColumn, outputColumn);
+        final int index = inputColumn.getIndex();
+        final Column outputColumn = outputColumns[index];
+        final CellCaster op = cellCasters[index];
+        if (pageReader.isNull(inputColumn)) {
+            castMetrics.addNull(index);
+            pageBuilder.setNull(outputColumn);
+        }
+        else if (castMetrics.addCell(index)) {
+            final long start = System.nanoTime();
+            cast(inputColumn, outputColumn, op);
+            castMetrics.addSampledNanos(index, System.nanoTime() - start);
+        }
+        else {
+            cast(inputColumn, outputColumn, op);
+        }
     }
 
-    @Override
-    public void timestampColumn(final Column inputColumn)
+    private void cast(final Column inputColumn, final Column outputColumn, final CellCaster op)
+            throws DataException
     {
-        final Column outputColumn = outputColumnMap.get(inputColumn.getName());
-        PageBuildable op = () -> columnCaster.setFromTimestamp(outputColumn, pageReader.getTimestamp(inputColumn));
-        withStopOnInvalidRecord(op, inputColumn, outputColumn);
+        if (stopOnInvalidRecord) {
+            op.cast();
+        }
+        else {
+            try {
+                op.cast();
+            }
+            catch (final DataException ex) {
+                if (invalidValueReporter.hasSink()) {
+                    invalidValueReporter.report(inputColumn, outputColumn, readValue(inputColumn), ex.getMessage(), position);
+                }
+                else {
+                    invalidValueReporter.report(inputColumn, ex.getMessage());
+                }
+                pageBuilder.setNull(outputColumn);
+            }
+        }
     }
 
-    @Override
-    public void jsonColumn(final Column inputColumn)
+    // the input value as a string, read again only for the sink of invalid values
+    private String readValue(final Column inputColumn)
     {
-        final Column outputColumn = outputColumnMap.get(inputColumn.getName());
-        PageBuildable op = () -> columnCaster.setFromJson(outputColumn, pageReader.getJson(inputColumn));
-        withStopOnInvalidRecord(op, inputColumn, outputColumn);
+        Type inputType = inputColumn.getType();
+        if (inputType instanceof BooleanType) {
+            return String.valueOf(pageReader.getBoolean(inputColumn));
+        } else if (inputType instanceof LongType) {
+            return String.valueOf(pageReader.getLong(inputColumn));
+        } else if (inputType instanceof DoubleType) {
+            return String.valueOf(pageReader.getDouble(inputColumn));
+        } else if (inputType instanceof StringType) {
+            return pageReader.getString(inputColumn);
+        } else if (inputType instanceof TimestampType) {
+            return pageReader.getTimestamp(inputColumn).toString();
+        } else {
+            return pageReader.getJson(inputColumn).toJson();
+        }
     }
 }
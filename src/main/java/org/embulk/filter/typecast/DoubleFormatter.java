@@ -0,0 +1,165 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Formatter of doubles into plain strings, such as "10000000.0" instead of "1.0E7", optionally with
+// a fixed number of decimals rounded half up, such as "0.10" for 0.1 and 2 decimals.
+//
+// Values below 2^53 with at most 17 fraction digits, which most measured and priced values are,
+// take the fast path: the fewest fraction digits which read back as the same double are searched
+// with exact long and double arithmetic, then written into a reusable char buffer. The other
+// values fall back to BigDecimal with the digits of Double.toString.
+final class DoubleFormatter
+{
+    static final String DEFAULT = "default";
+    static final String PLAIN = "plain";
+
+    private static final int MAX_FRACTION_DIGITS = 17;
+    private static final double TWO_TO_53 = 9007199254740992.0;
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[MAX_FRACTION_DIGITS + 1];
+    private static final long[] LONG_POWERS_OF_TEN = new long[MAX_FRACTION_DIGITS + 1];
+
+    static {
+        DOUBLE_POWERS_OF_TEN[0] = 1.0;
+        LONG_POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i <= MAX_FRACTION_DIGITS; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10.0; // exact up to 10^22
+            LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private final int decimals; // -1 for the fewest decimals
+    private final char[] buffer;
+    // digits and number of fraction digits found by shortest()
+    private long digits;
+    private int fractionDigits;
+
+    private DoubleFormatter(int decimals)
+    {
+        this.decimals = decimals;
+        this.buffer = new char[1 + 17 + 1 + Math.max(MAX_FRACTION_DIGITS, decimals)];
+    }
+
+    // returns null if the output is the same as DoubleCast.asString, throws ConfigException if invalid
+    static DoubleFormatter compile(String format, Integer decimals)
+    {
+        if (!DEFAULT.equals(format) && !PLAIN.equals(format)) {
+            throw new ConfigException(String.format("embulk-filter-typecast: double_format must be \"%s\" or \"%s\": \"%s\"",
+                    DEFAULT, PLAIN, format));
+        }
+        if (decimals != null && decimals < 0) {
+            throw new ConfigException(String.format("embulk-filter-typecast: decimals must not be negative: %d", decimals));
+        }
+        if (decimals == null && DEFAULT.equals(format)) {
+            return null;
+        }
+        return new DoubleFormatter(decimals == null ? -1 : decimals);
+    }
+
+    String format(double value)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return String.valueOf(value);
+        }
+        boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        double abs = Math.abs(value);
+        if (!shortest(abs)) {
+            return formatBigDecimal(negative, abs);
+        }
+        int scale = fractionDigits;
+        if (decimals >= 0 && fractionDigits > decimals) {
+            long divisor = LONG_POWERS_OF_TEN[fractionDigits - decimals];
+            long remainder = digits % divisor;
+            digits /= divisor;
+            if (remainder * 2 >= divisor) {
+                digits++;
+            }
+            scale = decimals;
+        }
+        if (decimals >= 0 && digits == 0) {
+            negative = false; // as BigDecimal, "0.00" rather than "-0.00"
+        }
+        int length = 0;
+        if (negative) {
+            buffer[length++] = '-';
+        }
+        long integerPart = digits / LONG_POWERS_OF_TEN[scale];
+        long fractionPart = digits % LONG_POWERS_OF_TEN[scale];
+        length = writeLong(length, integerPart);
+        int padding = decimals >= 0 ? decimals - scale : (scale == 0 ? 1 : 0);
+        if (scale + padding > 0) {
+            buffer[length++] = '.';
+            for (int i = length + scale - 1; i >= length; i--) {
+                buffer[i] = (char) ('0' + fractionPart % 10);
+                fractionPart /= 10;
+            }
+            length += scale;
+            for (int i = 0; i < padding; i++) {
+                buffer[length++] = '0';
+            }
+        }
+        return new String(buffer, 0, length);
+    }
+
+    // Finds the fewest fraction digits k and the digits m such that m / 10^k reads back as value.
+    // m / 10^k of two exact doubles is correctly rounded, so that it equals value only if the
+    // decimal m * 10^-k is parsed as value. Returns false if value needs more digits than a long.
+    private boolean shortest(double value)
+    {
+        if (value >= TWO_TO_53) {
+            return false;
+        }
+        for (int k = 0; k <= MAX_FRACTION_DIGITS; k++) {
+            double scaled = value * DOUBLE_POWERS_OF_TEN[k];
+            if (scaled >= TWO_TO_53) {
+                return false;
+            }
+            double rounded = Math.rint(scaled);
+            if (rounded / DOUBLE_POWERS_OF_TEN[k] == value) {
+                long m = (long) rounded;
+                while (k > 0 && m % 10 == 0) {
+                    m /= 10;
+                    k--;
+                }
+                digits = m;
+                fractionDigits = k;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int writeLong(int position, long value)
+    {
+        int count = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            count++;
+        }
+        for (int i = position + count - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + count;
+    }
+
+    private String formatBigDecimal(boolean negative, double abs)
+    {
+        BigDecimal decimal = new BigDecimal(Double.toString(abs));
+        String formatted;
+        if (decimals >= 0) {
+            decimal = decimal.setScale(decimals, RoundingMode.HALF_UP);
+            if (decimal.signum() == 0) {
+                negative = false;
+            }
+            formatted = decimal.toPlainString();
+        }
+        else {
+            decimal = decimal.stripTrailingZeros();
+            formatted = decimal.scale() > 0 ? decimal.toPlainString() : decimal.setScale(1).toPlainString();
+        }
+        return negative ? "-" + formatted : formatted;
+    }
+}
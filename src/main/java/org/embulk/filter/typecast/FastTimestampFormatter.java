@@ -0,0 +1,141 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.time.Timestamp;
+
+import java.time.LocalDate;
+
+// Formatter of timestamps into fixed-layout strings, such as "2016-05-12 20:14:13.123456000 +0900".
+//
+// The layout has a constant length, so that literals and the zone are written into a reusable
+// char buffer once, the date part only when the day changes from the previous timestamp,
+// and the time of day digits for every timestamp. format() returns null for years out of 0 to
+// 9999, so that the caller falls back to the generic TimestampFormatter.
+final class FastTimestampFormatter
+{
+    private static final long MIN_EPOCH_DAY = -719528; // 0000-01-01
+    private static final long MAX_EPOCH_DAY = 2932896; // 9999-12-31
+
+    private final char[] fields;
+    private final int[] positions;
+    private final int offset;
+    private final char[] buffer;
+    private long cachedEpochDay = Long.MIN_VALUE;
+
+    private FastTimestampFormatter(TimestampPattern pattern, int offset)
+    {
+        this.fields = pattern.getFields();
+        this.positions = new int[fields.length];
+        this.offset = offset;
+        String[] literals = pattern.getLiterals();
+        StringBuilder template = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            positions[i] = template.length();
+            switch (fields[i]) {
+                case TimestampPattern.LITERAL:
+                    template.append(literals[i]);
+                    break;
+                case TimestampPattern.YEAR:
+                    template.append("0000");
+                    break;
+                case TimestampPattern.NANO:
+                    template.append("000000000");
+                    break;
+                case TimestampPattern.ZONE:
+                    appendOffset(template, offset);
+                    break;
+                default:
+                    template.append("00");
+                    break;
+            }
+        }
+        this.buffer = template.toString().toCharArray();
+    }
+
+    // returns null if the format is not a fixed layout, or if the time zone is not a fixed offset
+    static FastTimestampFormatter compile(String format, String timeZone)
+    {
+        TimestampPattern pattern = TimestampPattern.compile(format);
+        if (pattern == null) {
+            return null;
+        }
+        Integer offset = TimestampPattern.parseFixedOffset(timeZone);
+        if (offset == null) {
+            return null;
+        }
+        return new FastTimestampFormatter(pattern, offset);
+    }
+
+    // %z is written as "+HHMM"
+    private static void appendOffset(StringBuilder template, int offset)
+    {
+        template.append(offset < 0 ? '-' : '+');
+        int minutes = Math.abs(offset) / 60;
+        template.append((char) ('0' + minutes / 600));
+        template.append((char) ('0' + minutes / 60 % 10));
+        template.append((char) ('0' + minutes % 60 / 10));
+        template.append((char) ('0' + minutes % 10));
+    }
+
+    // returns null if the year is out of 0 to 9999
+    String format(Timestamp value)
+    {
+        long localSecond = value.getEpochSecond() + offset;
+        long epochDay = Math.floorDiv(localSecond, 86400L);
+        int secondOfDay = (int) Math.floorMod(localSecond, 86400L);
+        if (epochDay != cachedEpochDay && !writeDate(epochDay)) {
+            return null;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+                case TimestampPattern.HOUR:
+                    writeDigits(positions[i], 2, secondOfDay / 3600);
+                    break;
+                case TimestampPattern.MINUTE:
+                    writeDigits(positions[i], 2, secondOfDay / 60 % 60);
+                    break;
+                case TimestampPattern.SECOND:
+                    writeDigits(positions[i], 2, secondOfDay % 60);
+                    break;
+                case TimestampPattern.NANO:
+                    writeDigits(positions[i], 9, value.getNano());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new String(buffer);
+    }
+
+    private boolean writeDate(long epochDay)
+    {
+        if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+            return false;
+        }
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+                case TimestampPattern.YEAR:
+                    writeDigits(positions[i], 4, date.getYear());
+                    break;
+                case TimestampPattern.MONTH:
+                    writeDigits(positions[i], 2, date.getMonthValue());
+                    break;
+                case TimestampPattern.DAY:
+                    writeDigits(positions[i], 2, date.getDayOfMonth());
+                    break;
+                default:
+                    break;
+            }
+        }
+        cachedEpochDay = epochDay;
+        return true;
+    }
+
+    private void writeDigits(int position, int count, int value)
+    {
+        for (int i = position + count - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
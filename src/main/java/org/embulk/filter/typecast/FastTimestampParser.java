@@ -0,0 +1,166 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.time.Timestamp;
+
+// Parser of fixed-layout timestamp strings, such as "2016-05-12 20:14:13.123456 +0900".
+//
+// It reads digits at fixed offsets without building intermediate objects, and accepts only input
+// written exactly in the layout: 4-digit years, 2-digit months to seconds, 1 to 9 fraction digits
+// for %N, and "Z", "+HH:MM" or "+HHMM" for %z. parse() returns null for anything else, so that
+// the caller falls back to the generic TimestampFormatter, which also reports invalid values.
+final class FastTimestampParser
+{
+    private static final int DAYS_0000_TO_1970 = 719528;
+
+    private final char[] fields;
+    private final String[] literals;
+    private final int defaultOffset;
+
+    private FastTimestampParser(TimestampPattern pattern, int defaultOffset)
+    {
+        this.fields = pattern.getFields();
+        this.literals = pattern.getLiterals();
+        this.defaultOffset = defaultOffset;
+    }
+
+    // returns null if the format is not a fixed layout, or if it has no %z and the default
+    // time zone is not a fixed offset
+    static FastTimestampParser compile(String format, String defaultTimeZone)
+    {
+        TimestampPattern pattern = TimestampPattern.compile(format);
+        if (pattern == null) {
+            return null;
+        }
+        Integer defaultOffset = TimestampPattern.parseFixedOffset(defaultTimeZone);
+        if (defaultOffset == null) {
+            if (!pattern.hasField(TimestampPattern.ZONE)) {
+                return null;
+            }
+            defaultOffset = 0; // never used as %z is always parsed
+        }
+        return new FastTimestampParser(pattern, defaultOffset);
+    }
+
+    // returns null if value is not exactly in the layout
+    Timestamp parse(String value)
+    {
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int nano = 0;
+        int offset = defaultOffset;
+        int pos = 0;
+        for (int i = 0; i < fields.length; i++) {
+            switch (fields[i]) {
+                case TimestampPattern.LITERAL:
+                    if (!value.startsWith(literals[i], pos)) {
+                        return null;
+                    }
+                    pos += literals[i].length();
+                    break;
+                case TimestampPattern.YEAR:
+                    year = TimestampPattern.digits(value, pos, 4);
+                    pos += 4;
+                    break;
+                case TimestampPattern.MONTH:
+                    month = TimestampPattern.digits(value, pos, 2);
+                    pos += 2;
+                    break;
+                case TimestampPattern.DAY:
+                    day = TimestampPattern.digits(value, pos, 2);
+                    pos += 2;
+                    break;
+                case TimestampPattern.HOUR:
+                    hour = TimestampPattern.digits(value, pos, 2);
+                    pos += 2;
+                    break;
+                case TimestampPattern.MINUTE:
+                    minute = TimestampPattern.digits(value, pos, 2);
+                    pos += 2;
+                    break;
+                case TimestampPattern.SECOND:
+                    second = TimestampPattern.digits(value, pos, 2);
+                    pos += 2;
+                    break;
+                case TimestampPattern.NANO:
+                    int end = pos;
+                    while (end < value.length() && value.charAt(end) >= '0' && value.charAt(end) <= '9') {
+                        end++;
+                    }
+                    int count = end - pos;
+                    if (count == 0 || count > 9) {
+                        return null;
+                    }
+                    nano = TimestampPattern.digits(value, pos, count);
+                    for (int j = count; j < 9; j++) {
+                        nano *= 10;
+                    }
+                    pos = end;
+                    break;
+                default: // ZONE
+                    if (pos < value.length() && value.charAt(pos) == 'Z') {
+                        offset = 0;
+                        pos++;
+                        break;
+                    }
+                    offset = TimestampPattern.parseOffset(value, pos);
+                    if (offset == Integer.MIN_VALUE) {
+                        return null;
+                    }
+                    pos += TimestampPattern.offsetLength(value, pos);
+                    break;
+            }
+            if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+                return null;
+            }
+        }
+        if (pos != value.length()) {
+            return null;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return null;
+        }
+        long epochSecond = epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offset;
+        return Timestamp.ofEpochSecond(epochSecond, nano);
+    }
+
+    private static boolean isLeapYear(int year)
+    {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month)
+    {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // same as LocalDate.toEpochDay() for years 0 to 9999
+    static long epochDay(int year, int month, int day)
+    {
+        long total = 365L * year;
+        total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+}
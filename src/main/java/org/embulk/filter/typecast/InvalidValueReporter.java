@@ -0,0 +1,173 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Reports values which could not be cast when stop_on_invalid_record is false.
+//
+// Only the first max_invalid_value_samples messages of each column are logged, truncated to
+// invalid_value_sample_length characters. Counts of all invalid values are logged as a summary
+// every invalid_value_report_interval seconds and at the end of the task. Every invalid value is
+// also counted as a failure of CastMetrics, and offered to the InvalidValueSink of invalid_value_path
+// if it is set. Workers of parallelism share one reporter, so that reporting is synchronized;
+// invalid values are expected to be rare.
+class InvalidValueReporter
+{
+    private static final Logger logger = LoggerFactory.getLogger(InvalidValueReporter.class);
+
+    private final Schema inputSchema;
+    private final int maxSamples;
+    private final int sampleLength;
+    private final long intervalNanos;
+    private final long[] counts;
+    private final CastMetrics castMetrics;
+    private final InvalidValueSink sink;
+    private final int task;
+    private long nextSummaryNanos;
+    private boolean reportedSinceSummary;
+    private boolean closed;
+
+    InvalidValueReporter(Schema inputSchema, int maxSamples, int sampleLength, long intervalSeconds,
+                         CastMetrics castMetrics)
+    {
+        this(inputSchema, maxSamples, sampleLength, intervalSeconds, castMetrics, null);
+    }
+
+    // the sink is released by close()
+    InvalidValueReporter(Schema inputSchema, int maxSamples, int sampleLength, long intervalSeconds,
+                         CastMetrics castMetrics, InvalidValueSink sink)
+    {
+        this.inputSchema = inputSchema;
+        this.maxSamples = maxSamples;
+        this.sampleLength = sampleLength;
+        this.intervalNanos = intervalSeconds * 1_000_000_000L;
+        this.counts = new long[inputSchema.getColumnCount()];
+        this.nextSummaryNanos = System.nanoTime() + intervalNanos;
+        this.castMetrics = castMetrics;
+        this.sink = sink;
+        this.task = sink != null ? sink.nextTask() : 0;
+    }
+
+    // true if invalid values are written to a sink, so that callers read them for report()
+    boolean hasSink()
+    {
+        return sink != null;
+    }
+
+    // Reports the value to the sink as well if there is one. The sink is not synchronized with the
+    // reporter, so that other workers can report while it waits for room in its queue.
+    void report(Column inputColumn, Column outputColumn, String value, String message, Position position)
+    {
+        report(inputColumn, message);
+        if (sink != null) {
+            sink.offer(new InvalidValueSink.Entry(task, inputColumn.getName(), value, outputColumn.getType().getName(),
+                    message, position.page, position.record));
+        }
+    }
+
+    // A value of a string cast, which failed without an exception. The failure is counted by its
+    // cause, and the message is built only if it is logged or written to the sink.
+    void reportString(Column inputColumn, Column outputColumn, String as, String cause, String value, Position position)
+    {
+        String message = null;
+        synchronized (this) {
+            if (count(inputColumn, cause)) {
+                message = StringCast.buildErrorMessage(as, value);
+                log(inputColumn, message);
+            }
+        }
+        if (sink != null) {
+            if (message == null) {
+                message = StringCast.buildErrorMessage(as, value);
+            }
+            sink.offer(new InvalidValueSink.Entry(task, inputColumn.getName(), value, outputColumn.getType().getName(),
+                    message, position.page, position.record));
+        }
+    }
+
+    synchronized void report(Column inputColumn, String message)
+    {
+        if (count(inputColumn, CastMetrics.toCause(message))) {
+            log(inputColumn, message);
+        }
+    }
+
+    // returns true if the value is one of the samples to log
+    private boolean count(Column inputColumn, String cause)
+    {
+        long count = ++counts[inputColumn.getIndex()];
+        castMetrics.addFailureCause(inputColumn.getIndex(), cause);
+        reportedSinceSummary = true;
+        if (count <= maxSamples) {
+            return true;
+        }
+        if (intervalNanos > 0 && System.nanoTime() - nextSummaryNanos >= 0) {
+            summarize();
+        }
+        return false;
+    }
+
+    private void log(Column inputColumn, String message)
+    {
+        logger.warn(truncate(message));
+        if (counts[inputColumn.getIndex()] == maxSamples) {
+            logger.warn(String.format("embulk-filter-typecast: further invalid values of column \"%s\" are only counted",
+                    inputColumn.getName()));
+        }
+    }
+
+    // Logs counts of invalid values per column if any was reported since the last summary
+    synchronized void summarize()
+    {
+        if (intervalNanos > 0) {
+            nextSummaryNanos = System.nanoTime() + intervalNanos;
+        }
+        if (!reportedSinceSummary) {
+            return;
+        }
+        reportedSinceSummary = false;
+        for (Column inputColumn : inputSchema.getColumns()) {
+            long count = counts[inputColumn.getIndex()];
+            if (count > 0) {
+                logger.warn(String.format("embulk-filter-typecast: %d invalid values in column \"%s\", %d of them logged",
+                        count, inputColumn.getName(), Math.min(count, maxSamples)));
+            }
+        }
+    }
+
+    // releases the sink, once
+    synchronized void close()
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (sink != null) {
+            InvalidValueSink.release(sink);
+        }
+    }
+
+    long getCount(Column inputColumn)
+    {
+        return counts[inputColumn.getIndex()];
+    }
+
+    String truncate(String message)
+    {
+        if (message == null || message.length() <= sampleLength) {
+            return message;
+        }
+        return String.format("%s... (%d characters truncated)",
+                message.substring(0, sampleLength), message.length() - sampleLength);
+    }
+
+    // The record which a visitor is casting: the index of the page in the task, and of the record in the page
+    static final class Position
+    {
+        long page;
+        int record;
+    }
+}
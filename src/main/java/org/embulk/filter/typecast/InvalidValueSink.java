@@ -0,0 +1,233 @@
+package org.embulk.filter.typecast;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.embulk.config.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Appends invalid values to invalid_value_path as JSON lines from a background thread.
+//
+// Casting threads only offer entries to a queue of invalid_value_queue_size entries; entries are
+// serialized and written by the writer thread, so that casting never waits for the disk. When the
+// queue is full, an entry is dropped and counted, or the casting thread waits for room if
+// invalid_value_queue_full is block. Tasks of the same process share the sink of a path, so that
+// their lines do not interleave, and the last task which releases it closes the file. Each task
+// takes the next task number of the sink, which its entries are written with. A path is shared only
+// with the same queue options, so that no task runs with options other than its own.
+class InvalidValueSink
+{
+    private static final Logger logger = LoggerFactory.getLogger(InvalidValueSink.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Entry END = new Entry(0, null, null, null, null, 0, 0);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    // path => sink shared by the tasks of the process, guarded by InvalidValueSink.class
+    private static final HashMap<String, InvalidValueSink> SINKS = new HashMap<>();
+
+    private final String path;
+    private final BlockingQueue<Entry> queue;
+    private final int queueSize;
+    private final boolean block;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicInteger taskCount = new AtomicInteger();
+    private volatile boolean failed;
+    private long written; // by the writer thread
+    private int references; // guarded by InvalidValueSink.class
+
+    InvalidValueSink(String path, int queueSize, boolean block)
+    {
+        this.path = path;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.queueSize = queueSize;
+        this.block = block;
+        this.writer = new Thread(this::write, String.format("embulk-filter-typecast-invalid-values-%d", THREAD_COUNT.incrementAndGet()));
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // returns the sink of the path, which is started by the first task
+    static synchronized InvalidValueSink acquire(String path, int queueSize, boolean block)
+    {
+        InvalidValueSink sink = SINKS.get(path);
+        if (sink == null) {
+            sink = new InvalidValueSink(path, queueSize, block);
+            SINKS.put(path, sink);
+        }
+        else if (sink.queueSize != queueSize || sink.block != block) {
+            throw new ConfigException(String.format(
+                    "embulk-filter-typecast: invalid_value_path \"%s\" is already written with invalid_value_queue_size %d and invalid_value_queue_full %s",
+                    path, sink.queueSize, sink.block ? "block" : "drop"));
+        }
+        sink.references++;
+        return sink;
+    }
+
+    // closes the sink when the last task releases it
+    static synchronized void release(InvalidValueSink sink)
+    {
+        if (--sink.references > 0) {
+            return;
+        }
+        SINKS.remove(sink.path);
+        sink.close();
+    }
+
+    // returns false if the entry is dropped as the queue is full or the file failed
+    boolean offer(Entry entry)
+    {
+        if (!failed) {
+            if (block) {
+                try {
+                    queue.put(entry);
+                    return true;
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            else if (queue.offer(entry)) {
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    // returns the number of a task writing to the sink, from 0 in the order they start
+    int nextTask()
+    {
+        return taskCount.getAndIncrement();
+    }
+
+    long getDropped()
+    {
+        return dropped.get();
+    }
+
+    // writes the entries queued so far, and waits for the writer thread
+    void close()
+    {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(END);
+                writer.join();
+                break;
+            }
+            catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            logger.warn(String.format("embulk-filter-typecast: %d invalid values written to \"%s\", %d dropped",
+                    written, path, dropped.get()));
+        }
+        else {
+            logger.info(String.format("embulk-filter-typecast: %d invalid values written to \"%s\"", written, path));
+        }
+    }
+
+    // Takes what is queued at once, and flushes when it has caught up with the queue
+    private void write()
+    {
+        List<Entry> entries = new ArrayList<>();
+        // index of the first entry which is not written yet
+        int next = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (true) {
+                entries.add(queue.take());
+                queue.drainTo(entries);
+                for (; next < entries.size(); next++) {
+                    Entry entry = entries.get(next);
+                    if (entry == END) {
+                        return;
+                    }
+                    out.write(entry.toJson());
+                    out.write('\n');
+                    written++;
+                }
+                entries.clear();
+                next = 0;
+                out.flush();
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            failed = true;
+            logger.warn(String.format("embulk-filter-typecast: failed to write invalid values to \"%s\": %s", path, ex.getMessage()));
+        }
+        catch (InterruptedException ex) {
+            return;
+        }
+        // discards entries until the end, so that casting threads waiting for room go on
+        entries.subList(0, next).clear();
+        boolean ended = entries.remove(END);
+        dropped.addAndGet(entries.size());
+        if (ended) {
+            return;
+        }
+        try {
+            while (queue.take() != END) {
+                dropped.incrementAndGet();
+            }
+        }
+        catch (InterruptedException ex) {
+            // the daemon thread ends with the process
+        }
+    }
+
+    // An invalid value and where it was found: the number of the task, the index of the page in the
+    // task, and of the record in the page
+    static final class Entry
+    {
+        private final int task;
+        private final String column;
+        private final String value;
+        private final String type;
+        private final String error;
+        private final long page;
+        private final int record;
+
+        Entry(int task, String column, String value, String type, String error, long page, int record)
+        {
+            this.task = task;
+            this.column = column;
+            this.value = value;
+            this.type = type;
+            this.error = error;
+            this.page = page;
+            this.record = record;
+        }
+
+        String toJson()
+        {
+            ObjectNode line = OBJECT_MAPPER.createObjectNode();
+            line.put("column", column);
+            line.put("value", value);
+            line.put("type", type);
+            line.put("error", error);
+            line.put("task", task);
+            line.put("page", page);
+            line.put("record", record);
+            return line.toString();
+        }
+    }
+}
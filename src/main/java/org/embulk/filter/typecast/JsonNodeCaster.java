@@ -2,6 +2,7 @@ package org.embulk.filter.typecast;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import org.embulk.filter.typecast.cast.BooleanCast;
+import org.embulk.filter.typecast.cast.BooleanMatcher;
 import org.embulk.filter.typecast.cast.DoubleCast;
 import org.embulk.filter.typecast.cast.JsonCast;
 import org.embulk.filter.typecast.cast.LongCast;
@@ -21,6 +22,18 @@ public class JsonNodeCaster
 {
     public static final JsonParser JSON_PARSER = new JsonParser();
 
+    private final BooleanMatcher booleanMatcher;
+
+    public JsonNodeCaster()
+    {
+        this(StringCast.DEFAULT_BOOLEAN_MATCHER);
+    }
+
+    public JsonNodeCaster(BooleanMatcher booleanMatcher)
+    {
+        this.booleanMatcher = booleanMatcher;
+    }
+
     public Object castTo(JsonNode jsonNode, Type outputType, TimestampFormatter formatter)
     {
         switch (jsonNode.getNodeType()) {
@@ -38,7 +51,7 @@ public class JsonNodeCaster
                 return null;
             case ARRAY:
             case OBJECT:
-                jsonTo(jsonNode, outputType, formatter);
+                return jsonTo(jsonNode, outputType, formatter);
         }
         return null;
     }
@@ -47,7 +60,7 @@ public class JsonNodeCaster
     {
         String jsonNodeValue = value.asText();
         if (outputType instanceof BooleanType) {
-            return StringCast.asBoolean(jsonNodeValue);
+            return StringCast.asBoolean(jsonNodeValue, booleanMatcher);
         } else if (outputType instanceof DoubleType) {
             return StringCast.asDouble(jsonNodeValue);
         } else if (outputType instanceof LongType) {
@@ -0,0 +1,163 @@
+package org.embulk.filter.typecast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
+import org.embulk.filter.typecast.cast.BooleanMatcher;
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.spi.DataException;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Type;
+import org.embulk.util.config.units.ColumnConfig;
+import org.embulk.util.json.JsonParser;
+import org.msgpack.value.Value;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+// Applies the JSONPath casts configured for one json column.
+//
+// Paths in the supported subset are merged into a JsonPathTrie and applied to the msgpack Value
+// in one descent. Other paths (such as slices or filters) fall back to Jayway JsonPath on a Jackson
+// tree afterwards, in the configured order.
+class JsonPathCaster
+{
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Configuration JSON_PATH_CONFIG = Configuration.builder().jsonProvider(new JacksonJsonNodeJsonProvider()).build();
+    private static final Configuration AS_PATH_LIST_CONFIG = Configuration.builder().options(Option.AS_PATH_LIST).build();
+
+    private final String columnName;
+    private final boolean stopOnInvalidRecord;
+    private final JsonPathTrie jsonPathTrie;
+    private final List<JsonPath> fallbackJsonPaths = new ArrayList<>();
+    private final HashMap<JsonPath, Type> jsonPathToTypeMap = new HashMap<>();
+    private final HashMap<JsonPath, JsonTimestampFormat> jsonPathToTimestampFormatMap = new HashMap<>();
+    private final JsonParser jsonParser = new JsonParser();
+    private final JsonNodeCaster jsonNodeCaster;
+
+    JsonPathCaster(String columnName, CompiledPaths compiledPaths, boolean stopOnInvalidRecord, BooleanMatcher booleanMatcher)
+    {
+        this.columnName = columnName;
+        this.stopOnInvalidRecord = stopOnInvalidRecord;
+        this.fallbackJsonPaths.addAll(compiledPaths.fallbackJsonPaths);
+        this.jsonPathToTypeMap.putAll(compiledPaths.fallbackTypeMap);
+        this.jsonPathToTimestampFormatMap.putAll(compiledPaths.fallbackTimestampFormatMap);
+        this.jsonPathTrie = compiledPaths.nativeJsonPaths.isEmpty() ? null
+                : JsonPathTrie.build(compiledPaths.nativeJsonPaths, stopOnInvalidRecord, booleanMatcher);
+        this.jsonNodeCaster = new JsonNodeCaster(booleanMatcher);
+    }
+
+    // Compiles the JSONPaths of a column, and timestampFormats are those of the paths, null for other
+    // types than timestamp. Compiled paths are immutable, so that casters of the same task share them
+    static CompiledPaths compile(List<ColumnConfig> jsonPathConfigs, List<JsonTimestampFormat> timestampFormats)
+    {
+        CompiledPaths compiledPaths = new CompiledPaths();
+        for (int i = 0; i < jsonPathConfigs.size(); i++) {
+            ColumnConfig columnConfig = jsonPathConfigs.get(i);
+            JsonTimestampFormat timestampFormat = timestampFormats.get(i);
+            NativeJsonPath nativeJsonPath = NativeJsonPath.compile(columnConfig.getName(), columnConfig.getType(), timestampFormat);
+            if (nativeJsonPath != null) {
+                compiledPaths.nativeJsonPaths.add(nativeJsonPath);
+            }
+            else {
+                JsonPath jsonPath = JsonPath.compile(columnConfig.getName());
+                compiledPaths.fallbackJsonPaths.add(jsonPath);
+                compiledPaths.fallbackTypeMap.put(jsonPath, columnConfig.getType());
+                if (timestampFormat != null) {
+                    compiledPaths.fallbackTimestampFormatMap.put(jsonPath, timestampFormat);
+                }
+            }
+        }
+        return compiledPaths;
+    }
+
+    // throws ConfigException if the JSONPaths of a column conflict or overlap
+    static void validate(CompiledPaths compiledPaths)
+    {
+        JsonPathTrie.build(compiledPaths.nativeJsonPaths, false);
+    }
+
+    static final class CompiledPaths
+    {
+        private final List<NativeJsonPath> nativeJsonPaths = new ArrayList<>();
+        private final List<JsonPath> fallbackJsonPaths = new ArrayList<>();
+        private final HashMap<JsonPath, Type> fallbackTypeMap = new HashMap<>();
+        private final HashMap<JsonPath, JsonTimestampFormat> fallbackTimestampFormatMap = new HashMap<>();
+
+        private CompiledPaths()
+        {
+        }
+    }
+
+    Value cast(String json)
+    {
+        return cast(StringCast.asJson(json));
+    }
+
+    Value cast(Value value)
+    {
+        Value casted = value;
+        if (jsonPathTrie != null) {
+            casted = jsonPathTrie.apply(casted);
+        }
+        if (!fallbackJsonPaths.isEmpty()) {
+            casted = castFallback(fallbackJsonPaths, casted);
+        }
+        return casted;
+    }
+
+    private Value castFallback(List<JsonPath> jsonPaths, Value value)
+    {
+        try {
+            JsonNode jsonNode = OBJECT_MAPPER.readTree(value.toJson());
+            ObjectNode wrapped = OBJECT_MAPPER.createObjectNode();
+            wrapped.set(columnName, jsonNode);
+
+            for (JsonPath jsonPath : jsonPaths) {
+                Type type = jsonPathToTypeMap.get(jsonPath);
+                JsonTimestampFormat timestampFormat = jsonPathToTimestampFormatMap.get(jsonPath);
+                try {
+                    JsonNode extracted = jsonPath.read(wrapped.toString(), JSON_PATH_CONFIG);
+                    if (extracted.isArray()) {
+                        List<String> matchPaths = jsonPath.read(wrapped.toString(), AS_PATH_LIST_CONFIG);
+                        Iterator<JsonNode> it = extracted.iterator();
+                        int i = 0;
+                        while (it.hasNext()) {
+                            JsonNode node = it.next();
+                            Object casted = castNode(node, type, timestampFormat);
+                            JsonPath.parse(wrapped, JSON_PATH_CONFIG).set(matchPaths.get(i), casted);
+                            i++;
+                        }
+                    } else {
+                        Object casted = castNode(extracted, type, timestampFormat);
+                        jsonPath.set(wrapped, casted, JSON_PATH_CONFIG);
+                    }
+                } catch (PathNotFoundException e) {
+                    if (stopOnInvalidRecord) {
+                        throw new DataException(e);
+                    }
+                }
+            }
+            return jsonParser.parse(wrapped.get(columnName).toString());
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+    }
+
+    private Object castNode(JsonNode node, Type type, JsonTimestampFormat timestampFormat)
+    {
+        if (timestampFormat == null) {
+            return jsonNodeCaster.castTo(node, type, null);
+        }
+        Object timestamp = jsonNodeCaster.castTo(node, type, timestampFormat.getParser());
+        return timestamp == null ? null : timestampFormat.toNodeValue((Timestamp) timestamp);
+    }
+}
@@ -0,0 +1,384 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigException;
+import org.embulk.filter.typecast.cast.BooleanMatcher;
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.spi.DataException;
+import org.embulk.spi.type.Type;
+import org.msgpack.value.ArrayValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// JSONPaths of one json column merged by their shared prefixes, so that all casts
+// are applied in a single descent of the msgpack Value.
+//
+// Paths must not overlap: a path may not be a prefix of another, and a wildcard may not
+// share its parent with a property or an index. Such configurations are rejected by build().
+class JsonPathTrie
+{
+    private static final int PROPERTY_MAP_THRESHOLD = 8;
+
+    private static final class Node
+    {
+        // one of the configured paths going through this node, used in messages
+        final String path;
+        final boolean definite;
+        Type type; // non-null only for leaves
+        JsonTimestampFormat timestampFormat; // non-null only for leaves of type timestamp
+
+        String[] propertyNames = new String[0];
+        Node[] propertyNodes = new Node[0];
+        HashMap<String, Node> propertyMap;
+        int[] indexes = new int[0];
+        Node[] indexNodes = new Node[0];
+        Node wildcard;
+
+        Node(String path, boolean definite)
+        {
+            this.path = path;
+            this.definite = definite;
+        }
+
+        boolean hasChildren()
+        {
+            return propertyNodes.length > 0 || indexNodes.length > 0 || wildcard != null;
+        }
+
+        Node findProperty(String name)
+        {
+            if (propertyMap != null) {
+                return propertyMap.get(name);
+            }
+            for (int i = 0; i < propertyNames.length; i++) {
+                if (propertyNames[i].equals(name)) {
+                    return propertyNodes[i];
+                }
+            }
+            return null;
+        }
+
+        Node findIndex(int index)
+        {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] == index) {
+                    return indexNodes[i];
+                }
+            }
+            return null;
+        }
+
+        Node addProperty(String name, String path)
+        {
+            Node child = new Node(path, definite);
+            propertyNames = Arrays.copyOf(propertyNames, propertyNames.length + 1);
+            propertyNodes = Arrays.copyOf(propertyNodes, propertyNodes.length + 1);
+            propertyNames[propertyNames.length - 1] = name;
+            propertyNodes[propertyNodes.length - 1] = child;
+            if (propertyNames.length > PROPERTY_MAP_THRESHOLD) {
+                if (propertyMap == null) {
+                    propertyMap = new HashMap<>();
+                    for (int i = 0; i < propertyNames.length; i++) {
+                        propertyMap.put(propertyNames[i], propertyNodes[i]);
+                    }
+                }
+                else {
+                    propertyMap.put(name, child);
+                }
+            }
+            return child;
+        }
+
+        Node addIndex(int index, String path)
+        {
+            Node child = new Node(path, definite);
+            indexes = Arrays.copyOf(indexes, indexes.length + 1);
+            indexNodes = Arrays.copyOf(indexNodes, indexNodes.length + 1);
+            indexes[indexes.length - 1] = index;
+            indexNodes[indexNodes.length - 1] = child;
+            return child;
+        }
+
+        // a node under a wildcard is indefinite
+        Node addWildcard(String path)
+        {
+            wildcard = new Node(path, false);
+            return wildcard;
+        }
+    }
+
+    private final Node root;
+    private final boolean stopOnInvalidRecord;
+    private final JsonValueCaster jsonValueCaster;
+
+    private JsonPathTrie(Node root, boolean stopOnInvalidRecord, BooleanMatcher booleanMatcher)
+    {
+        this.root = root;
+        this.stopOnInvalidRecord = stopOnInvalidRecord;
+        this.jsonValueCaster = new JsonValueCaster(booleanMatcher);
+    }
+
+    static JsonPathTrie build(List<NativeJsonPath> jsonPaths, boolean stopOnInvalidRecord)
+    {
+        return build(jsonPaths, stopOnInvalidRecord, StringCast.DEFAULT_BOOLEAN_MATCHER);
+    }
+
+    // throws ConfigException if paths conflict or overlap, paths which are exactly the same are merged
+    static JsonPathTrie build(List<NativeJsonPath> jsonPaths, boolean stopOnInvalidRecord, BooleanMatcher booleanMatcher)
+    {
+        Node root = null;
+        for (NativeJsonPath jsonPath : jsonPaths) {
+            if (root == null) {
+                root = new Node(jsonPath.getPath(), true);
+            }
+            insert(root, jsonPath);
+        }
+        return new JsonPathTrie(root, stopOnInvalidRecord, booleanMatcher);
+    }
+
+    private static void insert(Node root, NativeJsonPath jsonPath)
+    {
+        String path = jsonPath.getPath();
+        NativeJsonPath.Segment[] segments = jsonPath.getSegments();
+        Node node = root;
+        // segments[0] is the column itself
+        for (int depth = 1; depth < segments.length; depth++) {
+            if (node.type != null) {
+                throw overlap(path, node.path);
+            }
+            NativeJsonPath.Segment segment = segments[depth];
+            Node child;
+            switch (segment.kind) {
+                case NativeJsonPath.Segment.PROPERTY:
+                    if (node.wildcard != null) {
+                        throw overlap(path, node.wildcard.path);
+                    }
+                    child = node.findProperty(segment.name);
+                    if (child == null) {
+                        child = node.addProperty(segment.name, path);
+                    }
+                    break;
+                case NativeJsonPath.Segment.INDEX:
+                    if (node.wildcard != null) {
+                        throw overlap(path, node.wildcard.path);
+                    }
+                    for (int i = 0; i < node.indexes.length; i++) {
+                        // [-1] and [2] may point to the same element
+                        if ((node.indexes[i] < 0) != (segment.index < 0)) {
+                            throw overlap(path, node.indexNodes[i].path);
+                        }
+                    }
+                    child = node.findIndex(segment.index);
+                    if (child == null) {
+                        child = node.addIndex(segment.index, path);
+                    }
+                    break;
+                default:
+                    if (node.propertyNodes.length > 0) {
+                        throw overlap(path, node.propertyNodes[0].path);
+                    }
+                    if (node.indexNodes.length > 0) {
+                        throw overlap(path, node.indexNodes[0].path);
+                    }
+                    child = node.wildcard;
+                    if (child == null) {
+                        child = node.addWildcard(path);
+                    }
+                    break;
+            }
+            node = child;
+        }
+        if (node.type != null) {
+            if (!node.type.equals(jsonPath.getType())) {
+                throw new ConfigException(String.format(
+                        "embulk-filter-typecast: jsonpath \"%s\" is configured with both \"%s\" and \"%s\"",
+                        path, node.type, jsonPath.getType()));
+            }
+            return; // exactly the same path
+        }
+        if (node.hasChildren()) {
+            throw overlap(path, firstLeafPath(node));
+        }
+        node.type = jsonPath.getType();
+        node.timestampFormat = jsonPath.getTimestampFormat();
+    }
+
+    private static String firstLeafPath(Node node)
+    {
+        if (node.propertyNodes.length > 0) {
+            return node.propertyNodes[0].path;
+        }
+        if (node.indexNodes.length > 0) {
+            return node.indexNodes[0].path;
+        }
+        return node.wildcard.path;
+    }
+
+    private static ConfigException overlap(String path, String other)
+    {
+        return new ConfigException(String.format(
+                "embulk-filter-typecast: jsonpath \"%s\" overlaps with \"%s\"", path, other));
+    }
+
+    // Applies all casts to the column value. Returns the same instance if nothing changed.
+    Value apply(Value columnValue)
+    {
+        return apply(root, columnValue);
+    }
+
+    private Value apply(Node node, Value value)
+    {
+        if (node.timestampFormat != null) {
+            return jsonValueCaster.castToTimestamp(value, node.timestampFormat);
+        }
+        if (node.type != null) {
+            return jsonValueCaster.castTo(value, node.type, null);
+        }
+        if (node.wildcard != null) {
+            return applyWildcard(node.wildcard, value);
+        }
+        if (value.isMapValue()) {
+            notFound(node.indexNodes);
+            return applyProperties(node, value);
+        }
+        else if (value.isArrayValue()) {
+            notFound(node.propertyNodes);
+            return applyIndexes(node, value);
+        }
+        notFound(node.propertyNodes);
+        notFound(node.indexNodes);
+        return value;
+    }
+
+    private Value applyProperties(Node node, Value value)
+    {
+        if (node.propertyNodes.length == 0) {
+            return value;
+        }
+        Value[] keyValues = value.asMapValue().getKeyValueArray();
+        boolean changed = false;
+        int found = 0;
+        for (int i = 0; i < keyValues.length; i += 2) {
+            Value key = keyValues[i];
+            if (!key.isStringValue()) {
+                continue;
+            }
+            Node child = node.findProperty(key.asStringValue().asString());
+            if (child == null) {
+                continue;
+            }
+            found++;
+            Value element = keyValues[i + 1];
+            Value casted = apply(child, element);
+            if (casted != element) {
+                keyValues[i + 1] = casted;
+                changed = true;
+            }
+        }
+        if (found < node.propertyNodes.length && stopOnInvalidRecord) {
+            for (int i = 0; i < node.propertyNames.length; i++) {
+                if (!containsKey(keyValues, node.propertyNames[i])) {
+                    notFound(node.propertyNodes[i]);
+                }
+            }
+        }
+        return changed ? ValueFactory.newMap(keyValues, true) : value;
+    }
+
+    private static boolean containsKey(Value[] keyValues, String name)
+    {
+        for (int i = 0; i < keyValues.length; i += 2) {
+            if (keyValues[i].isStringValue() && name.equals(keyValues[i].asStringValue().asString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Value applyIndexes(Node node, Value value)
+    {
+        if (node.indexNodes.length == 0) {
+            return value;
+        }
+        ArrayValue array = value.asArrayValue();
+        int size = array.size();
+        Value[] elements = null;
+        for (int i = 0; i < node.indexes.length; i++) {
+            int index = node.indexes[i] < 0 ? size + node.indexes[i] : node.indexes[i];
+            if (index < 0 || index >= size) {
+                notFound(node.indexNodes[i]);
+                continue;
+            }
+            Value element = elements == null ? array.get(index) : elements[index];
+            Value casted = apply(node.indexNodes[i], element);
+            if (casted != element) {
+                if (elements == null) {
+                    elements = toArray(array);
+                }
+                elements[index] = casted;
+            }
+        }
+        return elements == null ? value : ValueFactory.newArray(elements, true);
+    }
+
+    // wildcard paths are indefinite, so a child without a match is left as is
+    private Value applyWildcard(Node child, Value value)
+    {
+        if (value.isArrayValue()) {
+            ArrayValue array = value.asArrayValue();
+            int size = array.size();
+            Value[] elements = null;
+            for (int i = 0; i < size; i++) {
+                Value element = array.get(i);
+                Value casted = apply(child, element);
+                if (casted != element) {
+                    if (elements == null) {
+                        elements = toArray(array);
+                    }
+                    elements[i] = casted;
+                }
+            }
+            return elements == null ? value : ValueFactory.newArray(elements, true);
+        }
+        else if (value.isMapValue()) {
+            Value[] keyValues = value.asMapValue().getKeyValueArray();
+            boolean changed = false;
+            for (int i = 1; i < keyValues.length; i += 2) {
+                Value element = keyValues[i];
+                Value casted = apply(child, element);
+                if (casted != element) {
+                    keyValues[i] = casted;
+                    changed = true;
+                }
+            }
+            return changed ? ValueFactory.newMap(keyValues, true) : value;
+        }
+        return value;
+    }
+
+    private static Value[] toArray(ArrayValue array)
+    {
+        Value[] elements = new Value[array.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = array.get(i);
+        }
+        return elements;
+    }
+
+    private void notFound(Node[] nodes)
+    {
+        for (Node node : nodes) {
+            notFound(node);
+        }
+    }
+
+    private void notFound(Node node)
+    {
+        if (stopOnInvalidRecord && node.definite) {
+            throw new DataException(String.format("No results for path: %s", node.path));
+        }
+    }
+}
@@ -17,13 +17,34 @@ public class JsonPathUtil
 
     public static String getColumnName(String jsonPath)
     {
-        Path compiledPath;
+        return getColumnName(compile(jsonPath));
+    }
+
+    public static void assertJsonPathFormat(String path)
+    {
+        assertJsonPathFormat(path, compile(path));
+    }
+
+    // same as assertJsonPathFormat() followed by getColumnName(), but compiles the path once
+    public static String getColumnNameOfValidPath(String jsonPath)
+    {
+        Path compiledPath = compile(jsonPath);
+        assertJsonPathFormat(jsonPath, compiledPath);
+        return getColumnName(compiledPath);
+    }
+
+    private static Path compile(String jsonPath)
+    {
         try {
-            compiledPath = PathCompiler.compile(jsonPath);
+            return PathCompiler.compile(jsonPath);
         }
         catch (InvalidPathException e) {
             throw new ConfigException(String.format("jsonpath %s, %s", jsonPath, e.getMessage()));
         }
+    }
+
+    private static String getColumnName(Path compiledPath)
+    {
         PathToken pathToken = ((CompiledPath) compiledPath).getRoot();
         pathToken = pathToken.getNext(); // skip $
         String fragment;
@@ -35,17 +56,10 @@ public class JsonPathUtil
         return fragment.substring(2, fragment.length() - 2);
     }
 
-    public static void assertJsonPathFormat(String path)
+    private static void assertJsonPathFormat(String path, Path compiledPath)
     {
-        Path compiledPath;
-        try {
-            compiledPath = PathCompiler.compile(path);
-        }
-        catch (InvalidPathException e) {
-            throw new ConfigException(String.format("jsonpath %s, %s", path, e.getMessage()));
-        }
         if (compiledPath.isFunctionPath()) {
             throw new ConfigException(String.format("Indefinite path and function path is not supported \"%s\"", path));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.filter.typecast.TypecastFilterPlugin.PluginTask;
+import org.embulk.filter.typecast.TypecastFilterPlugin.TypecastColumnConfig;
+import org.embulk.filter.typecast.cast.TimestampCast;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+// How a JSONPath of type timestamp reads and writes the values it matches.
+//
+// Strings are parsed with `format`, and numbers are read as epoch seconds, as when casting a column
+// to timestamp. As json has no timestamp, the result is written as a string with `output_format`,
+// or as epoch seconds if it is not set, as when casting a timestamp column to string or to long.
+// Formats are built once per path with the plan, and shared by the casters of a task.
+final class JsonTimestampFormat
+{
+    private final TimestampFormatter parser;
+    private final TimestampFormatter formatter; // null for epoch seconds
+
+    private JsonTimestampFormat(TimestampFormatter parser, TimestampFormatter formatter)
+    {
+        this.parser = parser;
+        this.formatter = formatter;
+    }
+
+    static JsonTimestampFormat create(PluginTask task, TypecastColumnConfig columnConfig)
+    {
+        TimestampFormatter formatter = null;
+        if (columnConfig.getOutputFormat().isPresent()) {
+            formatter = ColumnCaster.createTimestampFormatter(columnConfig.getOutputFormat().get(), task, columnConfig);
+        }
+        return new JsonTimestampFormat(ColumnCaster.createTimestampFormatter(task, columnConfig), formatter);
+    }
+
+    TimestampFormatter getParser()
+    {
+        return parser;
+    }
+
+    Value toValue(Timestamp timestamp)
+    {
+        if (formatter == null) {
+            return ValueFactory.newInteger(TimestampCast.asLong(timestamp));
+        }
+        return ValueFactory.newString(TimestampCast.asString(timestamp, formatter));
+    }
+
+    // the value set into a Jackson tree by JsonPathCaster, a Long or a String
+    Object toNodeValue(Timestamp timestamp)
+    {
+        if (formatter == null) {
+            return TimestampCast.asLong(timestamp);
+        }
+        return TimestampCast.asString(timestamp, formatter);
+    }
+}
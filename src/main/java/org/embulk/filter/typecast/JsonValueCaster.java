@@ -0,0 +1,158 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.filter.typecast.cast.BooleanCast;
+import org.embulk.filter.typecast.cast.BooleanMatcher;
+import org.embulk.filter.typecast.cast.DoubleCast;
+import org.embulk.filter.typecast.cast.JsonCast;
+import org.embulk.filter.typecast.cast.LongCast;
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.BooleanType;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.JsonType;
+import org.embulk.spi.type.LongType;
+import org.embulk.spi.type.StringType;
+import org.embulk.spi.type.Type;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+// msgpack Value version of JsonNodeCaster, used to cast values inside json columns
+public class JsonValueCaster
+{
+    private final BooleanMatcher booleanMatcher;
+
+    public JsonValueCaster()
+    {
+        this(StringCast.DEFAULT_BOOLEAN_MATCHER);
+    }
+
+    public JsonValueCaster(BooleanMatcher booleanMatcher)
+    {
+        this.booleanMatcher = booleanMatcher;
+    }
+
+    public Value castTo(Value value, Type outputType, TimestampFormatter formatter)
+    {
+        switch (value.getValueType()) {
+            case STRING:
+                return stringTo(value, outputType, formatter);
+            case INTEGER:
+                return longTo(value, outputType, formatter);
+            case FLOAT:
+                return doubleTo(value, outputType, formatter);
+            case BOOLEAN:
+                return booleanTo(value, outputType, formatter);
+            case ARRAY:
+            case MAP:
+                return jsonTo(value, outputType, formatter);
+            default:
+                return value;
+        }
+    }
+
+    public Value stringTo(Value value, Type outputType, TimestampFormatter formatter)
+    {
+        String jsonValue = value.asStringValue().asString();
+        if (outputType instanceof BooleanType) {
+            return ValueFactory.newBoolean(StringCast.asBoolean(jsonValue, booleanMatcher));
+        } else if (outputType instanceof DoubleType) {
+            return ValueFactory.newFloat(StringCast.asDouble(jsonValue));
+        } else if (outputType instanceof LongType) {
+            return ValueFactory.newInteger(StringCast.asLong(jsonValue));
+        } else {
+            // string, json (timestamp is cast by castToTimestamp)
+            return value;
+        }
+    }
+
+    public Value longTo(Value value, Type outputType, TimestampFormatter formatter)
+    {
+        long jsonValue = value.asIntegerValue().toLong();
+        if (outputType instanceof BooleanType) {
+            return ValueFactory.newBoolean(LongCast.asBoolean(jsonValue));
+        } else if (outputType instanceof DoubleType) {
+            return ValueFactory.newFloat(LongCast.asDouble(jsonValue));
+        } else if (outputType instanceof StringType) {
+            return ValueFactory.newString(LongCast.asString(jsonValue));
+        } else {
+            // long, json
+            return value;
+        }
+    }
+
+    public Value doubleTo(Value value, Type outputType, TimestampFormatter formatter)
+    {
+        double jsonValue = value.asFloatValue().toDouble();
+        if (outputType instanceof BooleanType) {
+            return ValueFactory.newBoolean(DoubleCast.asBoolean(jsonValue));
+        } else if (outputType instanceof LongType) {
+            return ValueFactory.newInteger(DoubleCast.asLong(jsonValue));
+        } else if (outputType instanceof StringType) {
+            return ValueFactory.newString(DoubleCast.asString(jsonValue));
+        } else {
+            // double, json
+            return value;
+        }
+    }
+
+    public Value booleanTo(Value value, Type outputType, TimestampFormatter formatter)
+    {
+        boolean jsonValue = value.asBooleanValue().getBoolean();
+        if (outputType instanceof DoubleType) {
+            return ValueFactory.newFloat(BooleanCast.asDouble(jsonValue));
+        } else if (outputType instanceof LongType) {
+            return ValueFactory.newInteger(BooleanCast.asLong(jsonValue));
+        } else if (outputType instanceof StringType) {
+            return ValueFactory.newString(BooleanCast.asString(jsonValue));
+        } else {
+            // boolean, json
+            return value;
+        }
+    }
+
+    public Value jsonTo(Value value, Type outputType, TimestampFormatter formatter)
+    {
+        if (outputType instanceof BooleanType) {
+            return ValueFactory.newBoolean(JsonCast.asBoolean(value));
+        } else if (outputType instanceof DoubleType) {
+            return ValueFactory.newFloat(JsonCast.asDouble(value));
+        } else if (outputType instanceof LongType) {
+            return ValueFactory.newInteger(JsonCast.asLong(value));
+        } else if (outputType instanceof StringType) {
+            return ValueFactory.newString(JsonCast.asString(value));
+        } else if (outputType instanceof JsonType) {
+            return value;
+        } else {
+            // timestamp is cast by castToTimestamp
+            return value;
+        }
+    }
+
+    // Reads the value as a timestamp with the format of its JSONPath, and writes it back as json
+    Value castToTimestamp(Value value, JsonTimestampFormat timestampFormat)
+    {
+        Timestamp timestamp;
+        switch (value.getValueType()) {
+            case STRING:
+                timestamp = StringCast.asTimestamp(value.asStringValue().asString(), timestampFormat.getParser());
+                break;
+            case INTEGER:
+                timestamp = LongCast.asTimestamp(value.asIntegerValue().toLong());
+                break;
+            case FLOAT:
+                timestamp = DoubleCast.asTimestamp(value.asFloatValue().toDouble());
+                break;
+            case BOOLEAN:
+                timestamp = BooleanCast.asTimestamp(value.asBooleanValue().getBoolean());
+                break;
+            case ARRAY:
+            case MAP:
+                timestamp = JsonCast.asTimestamp(value);
+                break;
+            default:
+                return value;
+        }
+        return timestampFormat.toValue(timestamp);
+    }
+}
@@ -0,0 +1,202 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.type.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// JSONPath compiled into segments so that it can be evaluated directly on msgpack Values
+// by JsonPathTrie.
+//
+// Supports the subset of JSONPath documented in README: dot and bracket properties,
+// array indexes (including negative ones) and wildcards ([*] and .*).
+class NativeJsonPath
+{
+    static final class Segment
+    {
+        static final int PROPERTY = 0;
+        static final int INDEX = 1;
+        static final int WILDCARD = 2;
+
+        final int kind;
+        final String name;
+        final int index;
+
+        private Segment(int kind, String name, int index)
+        {
+            this.kind = kind;
+            this.name = name;
+            this.index = index;
+        }
+
+        static Segment property(String name)
+        {
+            return new Segment(PROPERTY, name, 0);
+        }
+
+        static Segment index(int index)
+        {
+            return new Segment(INDEX, null, index);
+        }
+
+        static Segment wildcard()
+        {
+            return new Segment(WILDCARD, null, 0);
+        }
+    }
+
+    private final String path;
+    private final Segment[] segments;
+    private final Type type;
+    private final JsonTimestampFormat timestampFormat;
+
+    private NativeJsonPath(String path, Segment[] segments, Type type, JsonTimestampFormat timestampFormat)
+    {
+        this.path = path;
+        this.segments = segments;
+        this.type = type;
+        this.timestampFormat = timestampFormat;
+    }
+
+    // returns null if the path is not in the supported subset
+    static NativeJsonPath compile(String path, Type type)
+    {
+        return compile(path, type, null);
+    }
+
+    // timestampFormat is non-null for type timestamp
+    static NativeJsonPath compile(String path, Type type, JsonTimestampFormat timestampFormat)
+    {
+        Segment[] segments = parse(path);
+        if (segments == null || segments.length == 0 || segments[0].kind != Segment.PROPERTY) {
+            return null;
+        }
+        return new NativeJsonPath(path, segments, type, timestampFormat);
+    }
+
+    static Segment[] parse(String path)
+    {
+        if (!path.startsWith("$")) {
+            return null;
+        }
+        List<Segment> segments = new ArrayList<>();
+        int length = path.length();
+        int i = 1;
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '.') {
+                i++;
+                if (i >= length || path.charAt(i) == '.') {
+                    return null; // trailing dot or deep scan
+                }
+                if (path.charAt(i) == '*') {
+                    segments.add(Segment.wildcard());
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < length && path.charAt(i) != '.' && path.charAt(i) != '[') {
+                    char n = path.charAt(i);
+                    if (n == '(' || n == ')' || n == ' ' || n == '\'' || n == '"' || n == '*') {
+                        return null; // function or unexpected characters
+                    }
+                    i++;
+                }
+                segments.add(Segment.property(path.substring(start, i)));
+            }
+            else if (c == '[') {
+                int end = parseBracket(path, i + 1, segments);
+                if (end < 0) {
+                    return null;
+                }
+                i = end;
+            }
+            else {
+                return null;
+            }
+        }
+        return segments.toArray(new Segment[0]);
+    }
+
+    // parses the inside of [...] starting at begin, returns the index after ']' or -1
+    private static int parseBracket(String path, int begin, List<Segment> segments)
+    {
+        int length = path.length();
+        int i = skipSpaces(path, begin);
+        if (i >= length) {
+            return -1;
+        }
+        char c = path.charAt(i);
+        if (c == '\'' || c == '"') {
+            StringBuilder name = new StringBuilder();
+            i++;
+            while (i < length && path.charAt(i) != c) {
+                if (path.charAt(i) == '\\' && i + 1 < length) {
+                    i++;
+                }
+                name.append(path.charAt(i));
+                i++;
+            }
+            if (i >= length) {
+                return -1;
+            }
+            i = skipSpaces(path, i + 1);
+            if (i >= length || path.charAt(i) != ']') {
+                return -1; // multiple properties such as ['a','b']
+            }
+            segments.add(Segment.property(name.toString()));
+            return i + 1;
+        }
+        if (c == '*') {
+            i = skipSpaces(path, i + 1);
+            if (i >= length || path.charAt(i) != ']') {
+                return -1;
+            }
+            segments.add(Segment.wildcard());
+            return i + 1;
+        }
+        int close = path.indexOf(']', i);
+        if (close < 0) {
+            return -1;
+        }
+        String number = path.substring(i, close).trim();
+        if (!number.matches("-?[0-9]{1,9}")) {
+            return -1; // slice, union, or filter
+        }
+        segments.add(Segment.index(Integer.parseInt(number)));
+        return close + 1;
+    }
+
+    private static int skipSpaces(String path, int i)
+    {
+        while (i < path.length() && path.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    String getPath()
+    {
+        return path;
+    }
+
+    String getColumnName()
+    {
+        return segments[0].name;
+    }
+
+    Segment[] getSegments()
+    {
+        return segments;
+    }
+
+    Type getType()
+    {
+        return type;
+    }
+
+    JsonTimestampFormat getTimestampFormat()
+    {
+        return timestampFormat;
+    }
+}
@@ -0,0 +1,185 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.filter.typecast.TypecastFilterPlugin.PluginTask;
+import org.embulk.spi.BufferAllocator;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Casts pages on up to `parallelism` threads.
+//
+// Input pages are collected up to one per worker, and each worker casts whole pages, so that a page
+// is read by one PageReader only and each input page becomes an output page of about its size. Each
+// worker has its own PageReader, PageBuilder and ColumnVisitorImpl, so that casters keep their caches
+// and buffers without locking. Workers build pages into a list, and the pages are handed to the
+// output in the order of the input pages, so that the order of records is kept. The first page is
+// cast on the calling thread, the others on a pool of `parallelism - 1` daemon threads.
+class ParallelPageCaster implements AutoCloseable
+{
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final PageOutput output;
+    private final Worker[] workers;
+    private final ExecutorService executor;
+    // input pages waiting for a worker each, from the page of index firstPageIndex
+    private final List<Page> pendingPages = new ArrayList<>();
+    private long firstPageIndex;
+
+    ParallelPageCaster(PluginTask task, ColumnConfigIndex columnConfigIndex, Schema inputSchema, Schema outputSchema,
+                       BufferAllocator bufferAllocator, PageOutput output, ColumnVisitorImpl primary)
+    {
+        this.output = output;
+        this.workers = new Worker[task.getParallelism()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(task, columnConfigIndex, inputSchema, outputSchema, bufferAllocator, primary);
+        }
+        final int pool = POOL_COUNT.incrementAndGet();
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers.length - 1, runnable -> {
+            Thread thread = new Thread(runnable,
+                    String.format("embulk-filter-typecast-%d-%d", pool, threadCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // casts the pages once there is one for each worker
+    void add(Page page, long pageIndex)
+    {
+        if (pendingPages.isEmpty()) {
+            firstPageIndex = pageIndex;
+        }
+        pendingPages.add(page);
+        if (pendingPages.size() == workers.length) {
+            castPendingPages();
+        }
+    }
+
+    private void castPendingPages()
+    {
+        int pageCount = pendingPages.size();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < pageCount; i++) {
+            final Worker worker = workers[i];
+            final Page page = pendingPages.get(i);
+            final long pageIndex = firstPageIndex + i;
+            futures.add(executor.submit(() -> worker.cast(page, pageIndex)));
+        }
+        RuntimeException failure = null;
+        try {
+            workers[0].cast(pendingPages.get(0), firstPageIndex);
+        }
+        catch (RuntimeException ex) {
+            failure = ex;
+        }
+        pendingPages.clear();
+        // waits for all workers before their pages or builders are touched again
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (ExecutionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause() instanceof RuntimeException
+                            ? (RuntimeException) ex.getCause() : new RuntimeException(ex.getCause());
+                }
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new RuntimeException(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        for (int i = 0; i < pageCount; i++) {
+            for (Page built : workers[i].pages) {
+                output.add(built);
+            }
+            workers[i].pages.clear();
+        }
+    }
+
+    // casts the pages left, and merges metrics of the workers into the primary visitor, which reports them
+    void finish(ColumnVisitorImpl primary)
+    {
+        if (!pendingPages.isEmpty()) {
+            castPendingPages();
+        }
+        for (Worker worker : workers) {
+            worker.pageBuilder.finish();
+            primary.mergeMetrics(worker.visitor);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+        for (Page page : pendingPages) {
+            page.release();
+        }
+        pendingPages.clear();
+        for (Worker worker : workers) {
+            for (Page page : worker.pages) {
+                page.release();
+            }
+            worker.pages.clear();
+            worker.pageBuilder.close();
+            worker.pageReader.close();
+        }
+    }
+
+    private static class Worker
+    {
+        private final List<Page> pages = new ArrayList<>();
+        private final PageReader pageReader;
+        private final PageBuilder pageBuilder;
+        private final ColumnVisitorImpl visitor;
+
+        Worker(PluginTask task, ColumnConfigIndex columnConfigIndex, Schema inputSchema, Schema outputSchema,
+               BufferAllocator bufferAllocator, ColumnVisitorImpl primary)
+        {
+            this.pageReader = new PageReader(inputSchema);
+            this.pageBuilder = new PageBuilder(bufferAllocator, outputSchema, new PageOutput()
+            {
+                @Override
+                public void add(Page page)
+                {
+                    pages.add(page);
+                }
+
+                @Override
+                public void finish()
+                {
+                }
+
+                @Override
+                public void close()
+                {
+                }
+            });
+            this.visitor = new ColumnVisitorImpl(task, columnConfigIndex, inputSchema, outputSchema,
+                    pageReader, pageBuilder, primary);
+        }
+
+        // casts the records of the page, and flushes them as pages
+        void cast(Page page, long pageIndex)
+        {
+            visitor.visitPage(page, pageIndex);
+            pageBuilder.flush();
+        }
+    }
+}
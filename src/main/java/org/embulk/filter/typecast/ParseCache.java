@@ -0,0 +1,145 @@
+package org.embulk.filter.typecast;
+
+// Bounded cache from input strings of one column to their parsed values.
+//
+// Log-like inputs repeat the same values (timestamps in seconds, status codes, flags), so that
+// parsing each distinct value once pays off. The cache is direct-mapped, so that a lookup costs
+// a hash and an equals. It measures its hit rate every WINDOW lookups, and disables itself for
+// the rest of the task if the rate is below MIN_HIT_RATE.
+//
+// Only immutable values may be cached, and only successfully parsed ones. Longs and doubles are kept
+// unboxed by getLong/putLong and getDouble/putDouble, so that a miss allocates no box; a cache holds
+// either objects or primitives.
+class ParseCache<V>
+{
+    static final int WINDOW = 4096;
+    static final double MIN_HIT_RATE = 0.25;
+
+    private String[] keys;
+    // allocated by the first put, of objects or of primitives, doubles as their bits
+    private Object[] values;
+    private long[] primitiveValues;
+    private final int mask;
+    private int lookups;
+    private int hits;
+
+    // size is rounded up to a power of two, 0 disables the cache
+    ParseCache(int size)
+    {
+        if (size <= 0) {
+            this.mask = 0;
+            return;
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    boolean isEnabled()
+    {
+        return keys != null;
+    }
+
+    // returns null on a miss or if the cache is disabled
+    @SuppressWarnings("unchecked")
+    V get(String key)
+    {
+        if (keys == null) {
+            return null;
+        }
+        int slot = slot(key);
+        V value = null;
+        boolean hit = key.equals(keys[slot]);
+        if (hit) {
+            value = (V) values[slot];
+        }
+        count(hit);
+        return value;
+    }
+
+    void put(String key, V value)
+    {
+        if (keys == null) {
+            return;
+        }
+        if (values == null) {
+            values = new Object[keys.length];
+        }
+        int slot = slot(key);
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    // returns false on a miss or if the cache is disabled, result[0] is set only on a hit
+    boolean getLong(String key, long[] result)
+    {
+        if (keys == null) {
+            return false;
+        }
+        int slot = slot(key);
+        boolean hit = key.equals(keys[slot]);
+        if (hit) {
+            result[0] = primitiveValues[slot];
+        }
+        count(hit);
+        return hit;
+    }
+
+    void putLong(String key, long value)
+    {
+        if (keys == null) {
+            return;
+        }
+        if (primitiveValues == null) {
+            primitiveValues = new long[keys.length];
+        }
+        int slot = slot(key);
+        keys[slot] = key;
+        primitiveValues[slot] = value;
+    }
+
+    // returns false on a miss or if the cache is disabled, result[0] is set only on a hit
+    boolean getDouble(String key, double[] result)
+    {
+        if (keys == null) {
+            return false;
+        }
+        int slot = slot(key);
+        boolean hit = key.equals(keys[slot]);
+        if (hit) {
+            result[0] = Double.longBitsToDouble(primitiveValues[slot]);
+        }
+        count(hit);
+        return hit;
+    }
+
+    void putDouble(String key, double value)
+    {
+        putLong(key, Double.doubleToRawLongBits(value));
+    }
+
+    private void count(boolean hit)
+    {
+        if (hit) {
+            hits++;
+        }
+        if (++lookups == WINDOW) {
+            if (hits < WINDOW * MIN_HIT_RATE) {
+                keys = null;
+                values = null;
+                primitiveValues = null;
+            }
+            lookups = 0;
+            hits = 0;
+        }
+    }
+
+    private int slot(String key)
+    {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,95 @@
+package org.embulk.filter.typecast;
+
+// Bounded cache from input primitives of one column to the strings they were cast to.
+//
+// Code and status columns hold a few distinct values, so that sharing one String per value saves
+// formatting it and allocating it again for every cell. Keys are longs: longs as is, doubles as
+// their bits, and timestamps as nanoseconds since the epoch. Like ParseCache, it is direct-mapped,
+// and it disables itself for the rest of the task if its hit rate is below MIN_HIT_RATE.
+class StringDedupCache
+{
+    static final int WINDOW = ParseCache.WINDOW;
+    static final double MIN_HIT_RATE = ParseCache.MIN_HIT_RATE;
+
+    private long[] keys;
+    private String[] values;
+    private final int mask;
+    private int lookups;
+    private int hits;
+
+    // size is rounded up to a power of two, 0 disables the cache
+    StringDedupCache(int size)
+    {
+        if (size <= 0) {
+            this.mask = 0;
+            return;
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.values = new String[capacity];
+        this.mask = capacity - 1;
+    }
+
+    boolean isEnabled()
+    {
+        return keys != null;
+    }
+
+    // returns null on a miss or if the cache is disabled
+    String get(long key)
+    {
+        if (keys == null) {
+            return null;
+        }
+        int slot = slot(key);
+        String value = values[slot];
+        if (value != null && keys[slot] == key) {
+            hits++;
+        }
+        else {
+            value = null;
+        }
+        if (++lookups == WINDOW) {
+            if (hits < WINDOW * MIN_HIT_RATE) {
+                keys = null;
+                values = null;
+            }
+            lookups = 0;
+            hits = 0;
+        }
+        return value;
+    }
+
+    void put(long key, String value)
+    {
+        if (keys == null) {
+            return;
+        }
+        int slot = slot(key);
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private int slot(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    static long doubleKey(double value)
+    {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    // nanoseconds since the epoch, or Long.MIN_VALUE if they overflow (out of 1677 to 2262)
+    static long timestampKey(long epochSecond, int nano)
+    {
+        if (epochSecond <= Long.MIN_VALUE / 1_000_000_000L || epochSecond >= Long.MAX_VALUE / 1_000_000_000L) {
+            return Long.MIN_VALUE;
+        }
+        return epochSecond * 1_000_000_000L + nano;
+    }
+}
@@ -0,0 +1,190 @@
+package org.embulk.filter.typecast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// strftime pattern made only of fixed-layout fields, such as "%Y-%m-%d %H:%M:%S.%N %z".
+//
+// Used to build specialized parsers and formatters when the plan is built. Patterns with other
+// conversions, flags or widths, and "java:" or "ruby:" prefixed patterns, are not compiled and
+// are left to the generic TimestampFormatter.
+final class TimestampPattern
+{
+    static final char LITERAL = 0;
+    static final char YEAR = 'Y';
+    static final char MONTH = 'm';
+    static final char DAY = 'd';
+    static final char HOUR = 'H';
+    static final char MINUTE = 'M';
+    static final char SECOND = 'S';
+    static final char NANO = 'N';
+    static final char ZONE = 'z';
+
+    private final char[] fields;
+    private final String[] literals;
+
+    private TimestampPattern(char[] fields, String[] literals)
+    {
+        this.fields = fields;
+        this.literals = literals;
+    }
+
+    // returns null if the pattern has a conversion other than %Y %m %d %H %M %S %N %z %F %T %%,
+    // or does not have each of %Y %m %d exactly once
+    static TimestampPattern compile(String format)
+    {
+        if (format.startsWith("java:") || format.startsWith("ruby:")) {
+            return null;
+        }
+        List<Character> fields = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (++i >= format.length()) {
+                return null;
+            }
+            char conversion = format.charAt(i);
+            String expanded;
+            switch (conversion) {
+                case '%':
+                    literal.append('%');
+                    continue;
+                case 'F':
+                    expanded = "Y-m-d";
+                    break;
+                case 'T':
+                    expanded = "H:M:S";
+                    break;
+                case YEAR:
+                case MONTH:
+                case DAY:
+                case HOUR:
+                case MINUTE:
+                case SECOND:
+                case NANO:
+                case ZONE:
+                    expanded = String.valueOf(conversion);
+                    break;
+                default:
+                    return null;
+            }
+            for (int j = 0; j < expanded.length(); j++) {
+                char field = expanded.charAt(j);
+                if (field == '-' || field == ':') {
+                    literal.append(field);
+                    continue;
+                }
+                if (literal.length() > 0) {
+                    fields.add(LITERAL);
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                }
+                if (fields.contains(field)) {
+                    return null;
+                }
+                fields.add(field);
+                literals.add(null);
+            }
+        }
+        if (literal.length() > 0) {
+            fields.add(LITERAL);
+            literals.add(literal.toString());
+        }
+        if (!fields.contains(YEAR) || !fields.contains(MONTH) || !fields.contains(DAY)) {
+            return null;
+        }
+        char[] fieldArray = new char[fields.size()];
+        for (int i = 0; i < fieldArray.length; i++) {
+            fieldArray[i] = fields.get(i);
+        }
+        return new TimestampPattern(fieldArray, literals.toArray(new String[0]));
+    }
+
+    // Returns the offset in seconds of a time zone written as "UTC", "Z", "+HH:MM" or "+HHMM",
+    // or null for other zones, including region ids whose offset may change.
+    static Integer parseFixedOffset(String zone)
+    {
+        if (zone.equals("UTC") || zone.equals("Z")) {
+            return 0;
+        }
+        int offset = parseOffset(zone, 0);
+        if (offset == Integer.MIN_VALUE || offsetLength(zone, 0) != zone.length()) {
+            return null;
+        }
+        return offset;
+    }
+
+    // Parses "+HH:MM" or "+HHMM" at begin, returns Integer.MIN_VALUE if it does not match
+    static int parseOffset(String value, int begin)
+    {
+        int length = offsetLength(value, begin);
+        if (length < 0) {
+            return Integer.MIN_VALUE;
+        }
+        int hours = digits(value, begin + 1, 2);
+        int minutes = digits(value, begin + length - 2, 2);
+        if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59) {
+            return Integer.MIN_VALUE;
+        }
+        int offset = hours * 3600 + minutes * 60;
+        return value.charAt(begin) == '-' ? -offset : offset;
+    }
+
+    // returns 6 for "+HH:MM", 5 for "+HHMM", or -1
+    static int offsetLength(String value, int begin)
+    {
+        if (begin + 5 > value.length()) {
+            return -1;
+        }
+        char sign = value.charAt(begin);
+        if (sign != '+' && sign != '-') {
+            return -1;
+        }
+        if (value.charAt(begin + 3) == ':') {
+            return begin + 6 <= value.length() ? 6 : -1;
+        }
+        return 5;
+    }
+
+    // returns the value of count decimal digits at begin, or -1 if any of them is not a digit
+    static int digits(String value, int begin, int count)
+    {
+        if (begin + count > value.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = begin; i < begin + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    char[] getFields()
+    {
+        return fields;
+    }
+
+    String[] getLiterals()
+    {
+        return literals;
+    }
+
+    boolean hasField(char field)
+    {
+        for (char f : fields) {
+            if (f == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
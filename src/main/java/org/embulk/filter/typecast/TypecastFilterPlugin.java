@@ -3,6 +3,7 @@ package org.embulk.filter.typecast;
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.config.TaskSource;
+import org.embulk.filter.typecast.cast.EpochUnit;
 
 import org.embulk.spi.Column;
 import org.embulk.spi.Exec;
@@ -12,6 +13,8 @@ import org.embulk.spi.PageBuilder;
 import org.embulk.spi.PageOutput;
 import org.embulk.spi.PageReader;
 import org.embulk.spi.Schema;
+import org.embulk.spi.type.DoubleType;
+import org.embulk.spi.type.LongType;
 import org.embulk.spi.type.TimestampType;
 import org.embulk.spi.type.Type;
 import org.embulk.util.config.Config;
@@ -22,6 +25,8 @@ import org.embulk.util.config.Task;
 import org.embulk.util.config.TaskMapper;
 import org.embulk.util.config.units.ColumnConfig;
 import org.embulk.util.config.units.SchemaConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +34,8 @@ import java.util.Optional;
 
 public class TypecastFilterPlugin implements FilterPlugin
 {
+    private static final Logger logger = LoggerFactory.getLogger(TypecastFilterPlugin.class);
+
     private final ConfigMapperFactory configMapperFactory = ConfigMapperFactory.withDefault();
 
     // NOTE: This is not spi.ColumnConfig
@@ -45,6 +52,42 @@ public class TypecastFilterPlugin implements FilterPlugin
         @Config("date")
         @ConfigDefault("null")
         Optional<String> getDate();
+
+        @Config("output_format")
+        @ConfigDefault("null")
+        Optional<String> getOutputFormat();
+
+        @Config("unit")
+        @ConfigDefault("null")
+        Optional<String> getUnit();
+
+        @Config("true_values")
+        @ConfigDefault("null")
+        Optional<List<String>> getTrueValues();
+
+        @Config("false_values")
+        @ConfigDefault("null")
+        Optional<List<String>> getFalseValues();
+
+        @Config("ignore_case")
+        @ConfigDefault("null")
+        Optional<Boolean> getIgnoreCase();
+
+        @Config("double_format")
+        @ConfigDefault("null")
+        Optional<String> getDoubleFormat();
+
+        @Config("decimals")
+        @ConfigDefault("null")
+        Optional<Integer> getDecimals();
+
+        @Config("dedup_cache_size")
+        @ConfigDefault("null")
+        Optional<Integer> getDedupCacheSize();
+
+        @Config("lazy_json")
+        @ConfigDefault("false")
+        boolean getLazyJson();
     }
 
     public interface PluginTask extends Task
@@ -57,6 +100,55 @@ public class TypecastFilterPlugin implements FilterPlugin
         @ConfigDefault("false")
         boolean getStopOnInvalidRecord();
 
+        @Config("max_invalid_value_samples")
+        @ConfigDefault("10")
+        int getMaxInvalidValueSamples();
+
+        @Config("invalid_value_sample_length")
+        @ConfigDefault("256")
+        int getInvalidValueSampleLength();
+
+        @Config("invalid_value_report_interval")
+        @ConfigDefault("60")
+        long getInvalidValueReportInterval();
+
+        @Config("invalid_value_path")
+        @ConfigDefault("null")
+        Optional<String> getInvalidValuePath();
+
+        @Config("invalid_value_queue_size")
+        @ConfigDefault("1024")
+        int getInvalidValueQueueSize();
+
+        @Config("invalid_value_queue_full")
+        @ConfigDefault("\"drop\"")
+        String getInvalidValueQueueFull();
+
+        @Config("parse_cache_size")
+        @ConfigDefault("1024")
+        int getParseCacheSize();
+
+        // json values keep whole documents, so that they are cached only if asked
+        @Config("json_parse_cache_size")
+        @ConfigDefault("0")
+        int getJsonParseCacheSize();
+
+        @Config("default_dedup_cache_size")
+        @ConfigDefault("0")
+        int getDefaultDedupCacheSize();
+
+        @Config("batch_mode")
+        @ConfigDefault("false")
+        boolean getBatchMode();
+
+        @Config("parallelism")
+        @ConfigDefault("1")
+        int getParallelism();
+
+        @Config("metrics_path")
+        @ConfigDefault("null")
+        Optional<String> getMetricsPath();
+
         @Config("default_timezone")
         @ConfigDefault("\"UTC\"")
         public String getDefaultTimeZone();
@@ -68,6 +160,26 @@ public class TypecastFilterPlugin implements FilterPlugin
         @Config("default_date")
         @ConfigDefault("\"1970-01-01\"")
         public String getDefaultDate();
+
+        @Config("default_double_format")
+        @ConfigDefault("\"default\"")
+        public String getDefaultDoubleFormat();
+
+        @Config("default_true_values")
+        @ConfigDefault("null")
+        public Optional<List<String>> getDefaultTrueValues();
+
+        @Config("default_false_values")
+        @ConfigDefault("null")
+        public Optional<List<String>> getDefaultFalseValues();
+
+        @Config("default_ignore_case")
+        @ConfigDefault("false")
+        public boolean getDefaultIgnoreCase();
+
+        // true if no column is cast, so that pages are forwarded as they are. Set by transaction()
+        public boolean getPassThrough();
+        public void setPassThrough(boolean passThrough);
     }
 
     @Override
@@ -76,45 +188,111 @@ public class TypecastFilterPlugin implements FilterPlugin
     {
         ConfigMapper configMapper = configMapperFactory.createConfigMapper();
         PluginTask task = configMapper.map(config, PluginTask.class);
-        SchemaConfig schemaConfig = task.getColumns();
 
-        configure(inputSchema, schemaConfig);
-        Schema outputSchema = buildOutputSchema(inputSchema, schemaConfig);
+        ColumnConfigIndex columnConfigIndex = configure(task, configMapper, inputSchema);
+        Schema outputSchema = buildOutputSchema(inputSchema, columnConfigIndex);
+        task.setPassThrough(isPassThrough(columnConfigIndex));
+        if (task.getPassThrough()) {
+            logger.info("embulk-filter-typecast: no column is cast, pages are forwarded as they are");
+        }
         control.run(task.toTaskSource(), outputSchema);
     }
 
-    private void configure(final Schema inputSchema, SchemaConfig schemaConfig)
+    // true if no JSONPath is configured and every configured column keeps its type, as the casts of a
+    // type to itself return values as they are
+    private boolean isPassThrough(ColumnConfigIndex columnConfigIndex)
     {
-        // throw if column does not exist
-        for (ColumnConfig columnConfig : schemaConfig.getColumns()) {
-            String name = columnConfig.getName();
-            if (JsonPathUtil.isProbablyJsonPath(columnConfig.getName())) {
-                JsonPathUtil.assertJsonPathFormat(columnConfig.getName());
-                name = JsonPathUtil.getColumnName(columnConfig.getName());
+        for (ColumnConfigIndex.Entry entry : columnConfigIndex.getEntries()) {
+            if (entry.isJsonPath()) {
+                return false;
             }
-            inputSchema.lookupColumn(name);
+            if (!entry.getInputColumn().getType().equals(entry.getColumnConfig().getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ColumnConfigIndex configure(PluginTask task, ConfigMapper configMapper, final Schema inputSchema)
+    {
+        if (task.getMaxInvalidValueSamples() < 0) {
+            throw new ConfigException("embulk-filter-typecast: max_invalid_value_samples must not be negative");
+        }
+        if (task.getInvalidValueSampleLength() < 0) {
+            throw new ConfigException("embulk-filter-typecast: invalid_value_sample_length must not be negative");
+        }
+        if (task.getInvalidValueReportInterval() < 0) {
+            throw new ConfigException("embulk-filter-typecast: invalid_value_report_interval must not be negative");
+        }
+        if (task.getInvalidValueQueueSize() < 1) {
+            throw new ConfigException("embulk-filter-typecast: invalid_value_queue_size must be positive");
         }
-        // throw if timestamp is specified in json path
-        for (ColumnConfig columnConfig : schemaConfig.getColumns()) {
-            String name = columnConfig.getName();
-            if (JsonPathUtil.isProbablyJsonPath(name) && columnConfig.getType() instanceof TimestampType) {
-                throw new ConfigException(String.format("embulk-filter-typecast: timestamp type is not supported in json column: \"%s\"", name));
+        if (!"drop".equals(task.getInvalidValueQueueFull()) && !"block".equals(task.getInvalidValueQueueFull())) {
+            throw new ConfigException(String.format("embulk-filter-typecast: invalid_value_queue_full must be drop or block: \"%s\"",
+                    task.getInvalidValueQueueFull()));
+        }
+        if (task.getParseCacheSize() < 0) {
+            throw new ConfigException("embulk-filter-typecast: parse_cache_size must not be negative");
+        }
+        if (task.getJsonParseCacheSize() < 0) {
+            throw new ConfigException("embulk-filter-typecast: json_parse_cache_size must not be negative");
+        }
+        if (task.getParallelism() < 1) {
+            throw new ConfigException("embulk-filter-typecast: parallelism must be positive");
+        }
+        if (task.getDefaultDedupCacheSize() < 0) {
+            throw new ConfigException("embulk-filter-typecast: default_dedup_cache_size must not be negative");
+        }
+        // throw if column does not exist or a json path is invalid
+        ColumnConfigIndex columnConfigIndex = new ColumnConfigIndex(task, configMapper, inputSchema);
+        // throw if a value is both a default true value and a default false value
+        ColumnCaster.createBooleanMatcher(task, null);
+        for (ColumnConfigIndex.Entry entry : columnConfigIndex.getEntries()) {
+            ColumnConfig columnConfig = entry.getColumnConfig();
+            // throw if a value is both a true value and a false value, if a double format or a unit is
+            // invalid or a unit is set where it is not used, or if a cache size is negative
+            TypecastColumnConfig typecastColumnConfig = entry.getTypecastColumnConfig();
+            ColumnCaster.createBooleanMatcher(task, typecastColumnConfig);
+            ColumnCaster.createDoubleFormatter(task, typecastColumnConfig);
+            if (typecastColumnConfig.getUnit().isPresent()) {
+                EpochUnit.of(typecastColumnConfig.getUnit().get());
+                if (entry.isJsonPath() || !isEpochCast(entry.getInputColumn().getType(), columnConfig.getType())) {
+                    throw new ConfigException(String.format(
+                            "embulk-filter-typecast: unit is only for casts between long or double and timestamp: \"%s\"",
+                            columnConfig.getName()));
+                }
             }
+            if (typecastColumnConfig.getDedupCacheSize().orElse(0) < 0) {
+                throw new ConfigException(String.format("embulk-filter-typecast: dedup_cache_size must not be negative: \"%s\"",
+                        columnConfig.getName()));
+            }
+        }
+        // throw if json paths of a column conflict or overlap
+        for (JsonPathCaster.CompiledPaths compiledPaths : columnConfigIndex.getJsonPathsMap().values()) {
+            JsonPathCaster.validate(compiledPaths);
         }
+        return columnConfigIndex;
     }
 
-    private Schema buildOutputSchema(Schema inputSchema, SchemaConfig schemaConfig)
+    // true if the cast converts epoch numbers, which unit is used for
+    private static boolean isEpochCast(Type inputType, Type outputType)
+    {
+        if (inputType instanceof TimestampType) {
+            return outputType instanceof LongType || outputType instanceof DoubleType;
+        }
+        return (inputType instanceof LongType || inputType instanceof DoubleType) && outputType instanceof TimestampType;
+    }
+
+    private Schema buildOutputSchema(Schema inputSchema, ColumnConfigIndex columnConfigIndex)
     {
         List<Column> outputColumns = new ArrayList<>();
-        List<ColumnConfig> columnConfigs = schemaConfig.getColumns();
         int i = 0;
         for (Column inputColumn : inputSchema.getColumns()) {
             String name = inputColumn.getName();
-            final String inputColumnName = name;
             Type type = inputColumn.getType();
-            Optional<ColumnConfig> typecastedColumn = columnConfigs.stream().filter(columnConfig -> columnConfig.getName().equals(inputColumnName)).findFirst();
-            if (typecastedColumn.isPresent()) {
-                type = typecastedColumn.get().getType();
+            ColumnConfigIndex.Entry entry = columnConfigIndex.getEntry(name);
+            if (entry != null) {
+                type = entry.getColumnConfig().getType();
             }
             Column outputColumn = new Column(i++, name, type);
             outputColumns.add(outputColumn);
@@ -129,34 +307,54 @@ public class TypecastFilterPlugin implements FilterPlugin
         ConfigMapper configMapper = configMapperFactory.createConfigMapper();
         TaskMapper taskMapper = configMapperFactory.createTaskMapper();
         final PluginTask task = taskMapper.map(taskSource, PluginTask.class);
+        if (task.getPassThrough()) {
+            return output;
+        }
+        // configs are mapped and JSONPaths are compiled once per task, and shared by its visitors
+        final ColumnConfigIndex columnConfigIndex = new ColumnConfigIndex(task, configMapper, inputSchema);
 
         return new PageOutput()
         {
             private final PageReader pageReader = new PageReader(inputSchema);
             private final PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), outputSchema, output);
-            private final ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, configMapper, inputSchema, outputSchema, pageReader, pageBuilder);
+            private final ColumnVisitorImpl visitor = new ColumnVisitorImpl(task, columnConfigIndex, inputSchema, outputSchema, pageReader, pageBuilder);
+            private final ParallelPageCaster parallelPageCaster = task.getParallelism() > 1
+                    ? new ParallelPageCaster(task, columnConfigIndex, inputSchema, outputSchema, Exec.getBufferAllocator(), output, visitor)
+                    : null;
+            // index of the next page in the task
+            private long pageIndex = 0;
 
             @Override
             public void finish()
             {
+                // pages waiting for workers are added to the output before it finishes
+                if (parallelPageCaster != null) {
+                    parallelPageCaster.finish(visitor);
+                }
                 pageBuilder.finish();
+                visitor.finish();
             }
 
             @Override
             public void close()
             {
+                if (parallelPageCaster != null) {
+                    parallelPageCaster.close();
+                }
                 pageBuilder.close();
+                pageReader.close();
+                visitor.close();
             }
 
             @Override
             public void add(Page page)
             {
-                pageReader.setPage(page);
-
-                while (pageReader.nextRecord()) {
-                    inputSchema.visitColumns(visitor);
-                    pageBuilder.addRecord();
+                long index = pageIndex++;
+                if (parallelPageCaster != null) {
+                    parallelPageCaster.add(page, index);
+                    return;
                 }
+                visitor.visitPage(page, index);
             }
         };
     }
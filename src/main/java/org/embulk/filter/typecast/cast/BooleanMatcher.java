@@ -0,0 +1,131 @@
+package org.embulk.filter.typecast.cast;
+
+import org.embulk.config.ConfigException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Matches strings against vocabularies of true and false values.
+//
+// Words are bucketed by length and by first character, so that a match compares the few words of
+// one bucket without hashing the value. Empty words and words starting with a non-ASCII character
+// are compared one by one.
+public final class BooleanMatcher
+{
+    private static final String[] NO_WORDS = new String[0];
+    private static final boolean[] NO_VALUES = new boolean[0];
+
+    private final boolean ignoreCase;
+    // [length][first character] => words and their values
+    private final String[][][] words;
+    private final boolean[][][] values;
+    private final String[] nonAsciiWords;
+    private final boolean[] nonAsciiValues;
+
+    // throws ConfigException if a word is both a true value and a false value
+    public BooleanMatcher(Collection<String> trueValues, Collection<String> falseValues, boolean ignoreCase)
+    {
+        this.ignoreCase = ignoreCase;
+        int maxLength = 0;
+        for (String word : trueValues) {
+            maxLength = Math.max(maxLength, word.length());
+        }
+        for (String word : falseValues) {
+            maxLength = Math.max(maxLength, word.length());
+        }
+        this.words = new String[maxLength + 1][][];
+        this.values = new boolean[maxLength + 1][][];
+        List<String> nonAsciiWordList = new ArrayList<>();
+        List<Boolean> nonAsciiValueList = new ArrayList<>();
+        for (String word : trueValues) {
+            add(word, true, nonAsciiWordList, nonAsciiValueList);
+        }
+        for (String word : falseValues) {
+            add(word, false, nonAsciiWordList, nonAsciiValueList);
+        }
+        this.nonAsciiWords = nonAsciiWordList.toArray(NO_WORDS);
+        this.nonAsciiValues = new boolean[nonAsciiValueList.size()];
+        for (int i = 0; i < nonAsciiValues.length; i++) {
+            nonAsciiValues[i] = nonAsciiValueList.get(i);
+        }
+    }
+
+    private void add(String word, boolean value, List<String> nonAsciiWordList, List<Boolean> nonAsciiValueList)
+    {
+        Boolean existing = matchAscii(word);
+        for (int i = 0; existing == null && i < nonAsciiWordList.size(); i++) {
+            if (ignoreCase ? word.equalsIgnoreCase(nonAsciiWordList.get(i)) : word.equals(nonAsciiWordList.get(i))) {
+                existing = nonAsciiValueList.get(i);
+            }
+        }
+        if (existing != null) {
+            if (existing != value) {
+                throw new ConfigException(String.format(
+                        "embulk-filter-typecast: \"%s\" is configured as both a true value and a false value", word));
+            }
+            return;
+        }
+        if (word.isEmpty() || word.charAt(0) >= 0x80) {
+            nonAsciiWordList.add(word);
+            nonAsciiValueList.add(value);
+            return;
+        }
+        int length = word.length();
+        if (words[length] == null) {
+            words[length] = new String[0x80][];
+            values[length] = new boolean[0x80][];
+        }
+        int first = bucket(word.charAt(0));
+        String[] bucketWords = words[length][first] == null ? NO_WORDS : words[length][first];
+        boolean[] bucketValues = values[length][first] == null ? NO_VALUES : values[length][first];
+        String[] newWords = new String[bucketWords.length + 1];
+        boolean[] newValues = new boolean[bucketValues.length + 1];
+        System.arraycopy(bucketWords, 0, newWords, 0, bucketWords.length);
+        System.arraycopy(bucketValues, 0, newValues, 0, bucketValues.length);
+        newWords[bucketWords.length] = word;
+        newValues[bucketValues.length] = value;
+        words[length][first] = newWords;
+        values[length][first] = newValues;
+    }
+
+    private int bucket(char c)
+    {
+        return ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    // returns null if value is neither a true value nor a false value
+    public Boolean match(String value)
+    {
+        Boolean matched = matchAscii(value);
+        if (matched != null) {
+            return matched;
+        }
+        for (int i = 0; i < nonAsciiWords.length; i++) {
+            if (ignoreCase ? value.equalsIgnoreCase(nonAsciiWords[i]) : value.equals(nonAsciiWords[i])) {
+                return nonAsciiValues[i] ? Boolean.TRUE : Boolean.FALSE;
+            }
+        }
+        return null;
+    }
+
+    private Boolean matchAscii(String value)
+    {
+        int length = value.length();
+        if (length > 0 && length < words.length && value.charAt(0) < 0x80) {
+            String[][] byFirst = words[length];
+            if (byFirst != null) {
+                int first = bucket(value.charAt(0));
+                String[] bucketWords = byFirst[first];
+                if (bucketWords != null) {
+                    for (int i = 0; i < bucketWords.length; i++) {
+                        if (value.regionMatches(ignoreCase, 0, bucketWords[i], 0, length)) {
+                            return values[length][first][i] ? Boolean.TRUE : Boolean.FALSE;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
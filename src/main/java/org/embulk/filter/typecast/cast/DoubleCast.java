@@ -4,6 +4,8 @@ import org.embulk.spi.DataException;
 import org.embulk.spi.time.Timestamp;
 import org.msgpack.value.Value;
 
+import java.time.DateTimeException;
+
 public class DoubleCast
 {
     private DoubleCast() {}
@@ -44,4 +46,14 @@ public class DoubleCast
         long nanoAdjustMent = (long) ((value - epochSecond) * 1000000000);
         return Timestamp.ofEpochSecond(epochSecond, nanoAdjustMent);
     }
+
+    public static Timestamp asTimestamp(double value, EpochUnit unit)
+    {
+        try {
+            return unit.toTimestamp(value);
+        }
+        catch (ArithmeticException | DateTimeException ex) {
+            throw new DataException(buildErrorMessage("timestamp", value), ex);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package org.embulk.filter.typecast.cast;
+
+import org.embulk.config.ConfigException;
+import org.embulk.spi.time.Timestamp;
+
+// Units of epoch numbers cast to and from timestamp, by the `unit` option.
+//
+// Conversions of longs are exact: they split values with floor division, and throw
+// ArithmeticException instead of wrapping around when a result does not fit in long.
+// Timestamp.ofEpochSecond throws DateTimeException for seconds out of the range of Instant.
+public enum EpochUnit
+{
+    SECOND(1L),
+    MILLI(1000L),
+    MICRO(1000000L),
+    NANO(1000000000L);
+
+    private static final double TWO_TO_63 = 9.223372036854775808E18;
+
+    private final long perSecond;
+    private final long nanosPerUnit;
+
+    EpochUnit(long perSecond)
+    {
+        this.perSecond = perSecond;
+        this.nanosPerUnit = 1000000000L / perSecond;
+    }
+
+    // throws ConfigException if the name is not one of second, milli, micro and nano
+    public static EpochUnit of(String name)
+    {
+        switch (name) {
+            case "second":
+                return SECOND;
+            case "milli":
+                return MILLI;
+            case "micro":
+                return MICRO;
+            case "nano":
+                return NANO;
+            default:
+                throw new ConfigException(String.format(
+                        "embulk-filter-typecast: unit must be one of second, milli, micro and nano: \"%s\"", name));
+        }
+    }
+
+    Timestamp toTimestamp(long value)
+    {
+        return Timestamp.ofEpochSecond(Math.floorDiv(value, perSecond), Math.floorMod(value, perSecond) * nanosPerUnit);
+    }
+
+    // The integral part is split exactly, and the fraction is truncated to nanoseconds as
+    // DoubleCast.asTimestamp does
+    Timestamp toTimestamp(double value)
+    {
+        double floor = Math.floor(value);
+        if (!(floor >= -TWO_TO_63 && floor < TWO_TO_63)) {
+            throw new ArithmeticException("out of range of long"); // also NaN
+        }
+        long integral = (long) floor;
+        long nanos = Math.floorMod(integral, perSecond) * nanosPerUnit + (long) ((value - floor) * nanosPerUnit);
+        return Timestamp.ofEpochSecond(Math.floorDiv(integral, perSecond), nanos);
+    }
+
+    // truncated toward the past, such as -1 for -0.5 milliseconds
+    long toLong(Timestamp value)
+    {
+        return Math.addExact(Math.multiplyExact(value.getEpochSecond(), perSecond), value.getNano() / nanosPerUnit);
+    }
+
+    double toDouble(Timestamp value)
+    {
+        return value.getEpochSecond() * (double) perSecond + (double) value.getNano() / nanosPerUnit;
+    }
+}
@@ -0,0 +1,455 @@
+package org.embulk.filter.typecast.cast;
+
+import org.msgpack.value.ImmutableValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.math.BigInteger;
+
+// Validates json text in one pass without building values, and builds the value of validated text.
+//
+// scan() checks the grammar of RFC 8259 with the extensions which JsonParser enables: NaN, Infinity
+// and -Infinity as numbers, and control characters unescaped in strings. It accepts no text which
+// JsonParser rejects; StringCast.asLazyJson() hands the rest, such as +INF or text after the value,
+// to JsonParser. scan() records the number of elements of each array and object in the order they
+// open, so that build() walks the text once more and fills arrays of their final sizes, with no
+// token stream or growing list in between.
+final class JsonScanner
+{
+    private static final int[] NO_SIZES = new int[0];
+
+    private final String json;
+    private final int length;
+    private int pos;
+    // containerId => number of elements, or of key-value pairs of an object
+    private int[] sizes = NO_SIZES;
+    private int containerCount;
+    // depth => containerId and whether it is an object
+    private int[] stack = new int[8];
+    private boolean[] objects = new boolean[8];
+    private int depth;
+
+    private JsonScanner(String json)
+    {
+        this.json = json;
+        this.length = json.length();
+    }
+
+    // returns null if the text is not a json value
+    static Layout scan(String json)
+    {
+        JsonScanner scanner = new JsonScanner(json);
+        scanner.skipWhitespace();
+        if (scanner.pos >= scanner.length) {
+            return null;
+        }
+        if (!scanner.scanValue()) {
+            return null;
+        }
+        scanner.skipWhitespace();
+        if (scanner.pos != scanner.length) {
+            return null;
+        }
+        return new Layout(scanner.sizes);
+    }
+
+    private boolean scanValue()
+    {
+        while (true) {
+            skipWhitespace();
+            if (pos >= length) {
+                return false;
+            }
+            char c = json.charAt(pos);
+            if (c == '{' || c == '[') {
+                boolean object = c == '{';
+                push(object);
+                pos++;
+                skipWhitespace();
+                if (pos < length && json.charAt(pos) == (object ? '}' : ']')) {
+                    pos++;
+                    depth--;
+                }
+                else {
+                    if (object && !scanKey()) {
+                        return false;
+                    }
+                    continue;
+                }
+            }
+            else if (!scanScalar()) {
+                return false;
+            }
+            // the value is complete, and so are the containers which it or its parents close
+            while (true) {
+                if (depth == 0) {
+                    return true;
+                }
+                sizes[stack[depth - 1]]++;
+                skipWhitespace();
+                if (pos >= length) {
+                    return false;
+                }
+                char separator = json.charAt(pos++);
+                if (separator == ',') {
+                    if (objects[depth - 1] && !scanKey()) {
+                        return false;
+                    }
+                    break;
+                }
+                if (separator != (objects[depth - 1] ? '}' : ']')) {
+                    return false;
+                }
+                depth--;
+            }
+        }
+    }
+
+    private void push(boolean object)
+    {
+        if (containerCount == sizes.length) {
+            int[] grown = new int[Math.max(8, sizes.length * 2)];
+            System.arraycopy(sizes, 0, grown, 0, sizes.length);
+            sizes = grown;
+        }
+        if (depth == stack.length) {
+            int[] grownStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, grownStack, 0, stack.length);
+            stack = grownStack;
+            boolean[] grownObjects = new boolean[objects.length * 2];
+            System.arraycopy(objects, 0, grownObjects, 0, objects.length);
+            objects = grownObjects;
+        }
+        stack[depth] = containerCount++;
+        objects[depth] = object;
+        depth++;
+    }
+
+    // scans `"key" :` of an object, up to its value
+    private boolean scanKey()
+    {
+        skipWhitespace();
+        if (pos >= length || json.charAt(pos) != '"' || !scanString()) {
+            return false;
+        }
+        skipWhitespace();
+        if (pos >= length || json.charAt(pos) != ':') {
+            return false;
+        }
+        pos++;
+        return true;
+    }
+
+    private boolean scanScalar()
+    {
+        char c = json.charAt(pos);
+        switch (c) {
+            case '"':
+                return scanString();
+            case 't':
+                return scanLiteral("true");
+            case 'f':
+                return scanLiteral("false");
+            case 'n':
+                return scanLiteral("null");
+            case 'N':
+                return scanLiteral("NaN");
+            case 'I':
+                return scanLiteral("Infinity");
+            default:
+                return scanNumber();
+        }
+    }
+
+    private boolean scanLiteral(String literal)
+    {
+        if (!json.startsWith(literal, pos)) {
+            return false;
+        }
+        pos += literal.length();
+        return true;
+    }
+
+    private boolean scanString()
+    {
+        pos++; // skip "
+        while (pos < length) {
+            char c = json.charAt(pos++);
+            if (c == '"') {
+                return true;
+            }
+            else if (c == '\\') {
+                if (pos >= length) {
+                    return false;
+                }
+                char escaped = json.charAt(pos++);
+                if (escaped == 'u') {
+                    if (pos + 4 > length) {
+                        return false;
+                    }
+                    for (int i = 0; i < 4; i++) {
+                        if (!isHexDigit(json.charAt(pos++))) {
+                            return false;
+                        }
+                    }
+                }
+                else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean scanNumber()
+    {
+        if (json.charAt(pos) == '-') {
+            pos++;
+            if (pos < length && json.charAt(pos) == 'I') {
+                return scanLiteral("Infinity");
+            }
+        }
+        if (pos < length && json.charAt(pos) == '0') {
+            pos++;
+        }
+        else if (skipDigits() == 0) {
+            return false;
+        }
+        if (pos < length && json.charAt(pos) == '.') {
+            pos++;
+            if (skipDigits() == 0) {
+                return false;
+            }
+        }
+        if (pos < length && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+            pos++;
+            if (pos < length && (json.charAt(pos) == '+' || json.charAt(pos) == '-')) {
+                pos++;
+            }
+            if (skipDigits() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHexDigit(char c)
+    {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private int skipDigits()
+    {
+        int start = pos;
+        while (pos < length && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private void skipWhitespace()
+    {
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    // Builds the value of the json text, which scan() returned the layout of, as JsonParser reads it
+    static ImmutableValue build(String json, Layout layout)
+    {
+        return new Builder(json, layout.sizes).buildValue();
+    }
+
+    private static final class Builder
+    {
+        private final String json;
+        private final int[] sizes;
+        private int pos;
+        private int containerId;
+
+        private Builder(String json, int[] sizes)
+        {
+            this.json = json;
+            this.sizes = sizes;
+        }
+
+        private ImmutableValue buildValue()
+        {
+            skipWhitespace();
+            char c = json.charAt(pos);
+            switch (c) {
+                case '{': {
+                    Value[] kvs = new Value[sizes[containerId++] * 2];
+                    pos++;
+                    for (int i = 0; i < kvs.length; i += 2) {
+                        skipWhitespace();
+                        kvs[i] = ValueFactory.newString(buildString());
+                        skipWhitespace();
+                        pos++; // skip :
+                        kvs[i + 1] = buildValue();
+                        skipWhitespace();
+                        pos++; // skip , or }
+                    }
+                    if (kvs.length == 0) {
+                        skipWhitespace();
+                        pos++; // skip }
+                    }
+                    return ValueFactory.newMap(kvs, true);
+                }
+                case '[': {
+                    Value[] elements = new Value[sizes[containerId++]];
+                    pos++;
+                    for (int i = 0; i < elements.length; i++) {
+                        elements[i] = buildValue();
+                        skipWhitespace();
+                        pos++; // skip , or ]
+                    }
+                    if (elements.length == 0) {
+                        skipWhitespace();
+                        pos++; // skip ]
+                    }
+                    return ValueFactory.newArray(elements, true);
+                }
+                case '"':
+                    return ValueFactory.newString(buildString());
+                case 't':
+                    pos += 4;
+                    return ValueFactory.newBoolean(true);
+                case 'f':
+                    pos += 5;
+                    return ValueFactory.newBoolean(false);
+                case 'n':
+                    pos += 4;
+                    return ValueFactory.newNil();
+                default:
+                    return buildNumber();
+            }
+        }
+
+        // decodes the string at pos, and moves after its closing quote
+        private String buildString()
+        {
+            int start = pos + 1;
+            int end = start;
+            while (true) {
+                char c = json.charAt(end);
+                if (c == '"') {
+                    pos = end + 1;
+                    return json.substring(start, end);
+                }
+                if (c == '\\') {
+                    StringBuilder sb = new StringBuilder();
+                    pos = decodeString(start, sb);
+                    return sb.toString();
+                }
+                end++;
+            }
+        }
+
+        // decodes the string from start, after its opening quote, into sb. Returns the position after
+        // the closing quote
+        private int decodeString(int start, StringBuilder sb)
+        {
+            int pos = start;
+            while (true) {
+                char c = json.charAt(pos++);
+                if (c == '"') {
+                    break;
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        // '"', '\\' and '/'
+                        sb.append(escaped);
+                        break;
+                }
+            }
+            return pos;
+        }
+
+        // numbers, NaN, Infinity and -Infinity, as JsonParser reads them
+        private ImmutableValue buildNumber()
+        {
+            int start = pos;
+            boolean isFloat = false;
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c == '.' || c == 'e' || c == 'E' || c == 'N' || c == 'I') {
+                    isFloat = true;
+                }
+                else if ("0123456789+-".indexOf(c) < 0) {
+                    break;
+                }
+                if (c == 'N') {
+                    pos += 3; // NaN
+                    break;
+                }
+                if (c == 'I') {
+                    pos += 8; // Infinity
+                    break;
+                }
+                pos++;
+            }
+            String number = json.substring(start, pos);
+            if (isFloat) {
+                return ValueFactory.newFloat(Double.parseDouble(number));
+            }
+            if (number.length() < 19) {
+                return ValueFactory.newInteger(Long.parseLong(number));
+            }
+            BigInteger integer = new BigInteger(number);
+            if (integer.bitLength() < 64) {
+                return ValueFactory.newInteger(integer.longValue());
+            }
+            return ValueFactory.newInteger(integer);
+        }
+
+        private void skipWhitespace()
+        {
+            while (pos < json.length()) {
+                char c = json.charAt(pos);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                pos++;
+            }
+        }
+    }
+
+    static final class Layout
+    {
+        private final int[] sizes;
+
+        private Layout(int[] sizes)
+        {
+            this.sizes = sizes;
+        }
+    }
+}
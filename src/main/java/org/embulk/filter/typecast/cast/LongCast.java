@@ -4,8 +4,21 @@ import org.embulk.spi.DataException;
 import org.embulk.spi.time.Timestamp;
 import org.msgpack.value.Value;
 
+import java.time.DateTimeException;
+
 public class LongCast
 {
+    // strings of small integers, which are shared as codes and counts often are
+    private static final int MIN_SMALL = -128;
+    private static final int MAX_SMALL = 1023;
+    private static final String[] SMALL_STRINGS = new String[MAX_SMALL - MIN_SMALL + 1];
+
+    static {
+        for (int i = 0; i < SMALL_STRINGS.length; i++) {
+            SMALL_STRINGS[i] = String.valueOf(i + MIN_SMALL);
+        }
+    }
+
     private LongCast() {}
 
     private static String buildErrorMessage(String as, long value)
@@ -38,6 +51,9 @@ public class LongCast
 
     public static String asString(long value)
     {
+        if (value >= MIN_SMALL && value <= MAX_SMALL) {
+            return SMALL_STRINGS[(int) value - MIN_SMALL];
+        }
         return String.valueOf(value);
     }
 
@@ -50,4 +66,14 @@ public class LongCast
     {
         return Timestamp.ofEpochSecond(value);
     }
+
+    public static Timestamp asTimestamp(long value, EpochUnit unit)
+    {
+        try {
+            return unit.toTimestamp(value);
+        }
+        catch (ArithmeticException | DateTimeException ex) {
+            throw new DataException(buildErrorMessage("timestamp", value), ex);
+        }
+    }
 }
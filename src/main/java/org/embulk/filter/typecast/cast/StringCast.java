@@ -39,22 +39,31 @@ public class StringCast {
         FALSE_STRINGS = Collections.unmodifiableSet(falseStrings);
     }
 
+    public static final BooleanMatcher DEFAULT_BOOLEAN_MATCHER = new BooleanMatcher(TRUE_STRINGS, FALSE_STRINGS, false);
+
 
     private StringCast() {
     }
 
-    private static String buildErrorMessage(String as, String value) {
+    public static String buildErrorMessage(String as, String value) {
         return String.format("cannot cast String to %s: \"%s\"", as, value);
     }
 
+    // the message of buildErrorMessage() up to the value, which failures are counted by
+    public static String buildErrorCause(String as) {
+        return "cannot cast String to " + as;
+    }
+
     public static boolean asBoolean(String value) {
-        if (TRUE_STRINGS.contains(value)) {
-            return true;
-        } else if (FALSE_STRINGS.contains(value)) {
-            return false;
-        } else {
+        return asBoolean(value, DEFAULT_BOOLEAN_MATCHER);
+    }
+
+    public static boolean asBoolean(String value, BooleanMatcher matcher) {
+        Boolean result = matcher.match(value);
+        if (result == null) {
             throw new DataException(buildErrorMessage("boolean", value));
         }
+        return result;
     }
 
     public static long asLong(String value) {
@@ -73,6 +82,148 @@ public class StringCast {
         }
     }
 
+    // Non-throwing variants of asLong and asDouble, as BooleanMatcher.match is of asBoolean. Invalid
+    // values cost about as much as valid ones, which matters on dirty inputs with stop_on_invalid_record: false.
+
+    // returns false if value is not a long, result[0] is set only on success
+    public static boolean tryAsLong(String value, long[] result) {
+        int length = value.length();
+        if (length == 0) {
+            return false;
+        }
+        int i = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (length == 1) {
+                return false;
+            }
+        }
+        // accumulate negatively as Long.parseLong does, so that Long.MIN_VALUE fits
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long accumulated = 0;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                if (c < 0x80) {
+                    return false;
+                }
+                return tryAsLongSlow(value, result); // non-ASCII digits are accepted by Long.parseLong
+            }
+            if (accumulated < multiplyLimit) {
+                return false;
+            }
+            accumulated *= 10;
+            if (accumulated < limit + digit) {
+                return false;
+            }
+            accumulated -= digit;
+        }
+        result[0] = negative ? accumulated : -accumulated;
+        return true;
+    }
+
+    private static boolean tryAsLongSlow(String value, long[] result) {
+        try {
+            result[0] = Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    // returns false if value is not a double, result[0] is set only on success
+    public static boolean tryAsDouble(String value, double[] result) {
+        int validity = checkDecimalSyntax(value);
+        if (validity < 0) {
+            return false;
+        } else if (validity > 0) {
+            result[0] = Double.parseDouble(value);
+            return true;
+        }
+        // hexadecimal and other rare forms
+        try {
+            result[0] = Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    // Checks value against the decimal syntax of Double.parseDouble.
+    // Returns 1 if it is valid, -1 if it is invalid, 0 if it is hexadecimal and not checked here.
+    private static int checkDecimalSyntax(String value) {
+        int begin = 0;
+        int end = value.length();
+        // Double.parseDouble trims as String.trim() does
+        while (begin < end && value.charAt(begin) <= ' ') {
+            begin++;
+        }
+        while (end > begin && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int i = begin;
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+        if (i >= end) {
+            return -1;
+        }
+        if (value.startsWith("NaN", i)) {
+            return i + 3 == end ? 1 : -1;
+        }
+        if (value.startsWith("Infinity", i)) {
+            return i + 8 == end ? 1 : -1;
+        }
+        if (i + 1 < end && value.charAt(i) == '0' && (value.charAt(i + 1) == 'x' || value.charAt(i + 1) == 'X')) {
+            return 0;
+        }
+        int digits = 0;
+        while (i < end && isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && value.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return -1;
+        }
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < end && isDigit(value.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return -1;
+            }
+        }
+        if (i < end) {
+            char suffix = value.charAt(i);
+            if (suffix == 'd' || suffix == 'D' || suffix == 'f' || suffix == 'F') {
+                i++;
+            }
+        }
+        return i == end ? 1 : -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
     public static String asString(String value) {
         return value;
     }
@@ -85,6 +236,16 @@ public class StringCast {
         }
     }
 
+    // validates the json in one scan, and builds the value from the text without a token stream. Text
+    // which the scan does not accept is parsed by asJson(), so that both accept the same values
+    public static Value asLazyJson(String value) {
+        JsonScanner.Layout layout = JsonScanner.scan(value);
+        if (layout == null) {
+            return asJson(value);
+        }
+        return JsonScanner.build(value, layout);
+    }
+
     public static Timestamp asTimestamp(String value, TimestampFormatter parser) {
         try {
             return Timestamp.ofInstant(parser.parse(value));
@@ -24,6 +24,16 @@ public class TimestampCast
         return value.getEpochSecond();
     }
 
+    public static long asLong(Timestamp value, EpochUnit unit)
+    {
+        try {
+            return unit.toLong(value);
+        }
+        catch (ArithmeticException ex) {
+            throw new DataException(buildErrorMessage("long", value), ex);
+        }
+    }
+
     public static double asDouble(Timestamp value)
     {
         long epochSecond = value.getEpochSecond();
@@ -31,6 +41,11 @@ public class TimestampCast
         return epochSecond + ((double) nano / 1000000000.0);
     }
 
+    public static double asDouble(Timestamp value, EpochUnit unit)
+    {
+        return unit.toDouble(value);
+    }
+
     public static String asString(Timestamp value, TimestampFormatter formatter) throws DataException
     {
         return formatter.format(value.getInstant());
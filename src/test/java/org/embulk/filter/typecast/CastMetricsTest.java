@@ -0,0 +1,72 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CastMetricsTest
+{
+    private final Schema schema = new Schema(Arrays.asList(
+            new Column(0, "a", Types.STRING),
+            new Column(1, "b", Types.STRING)));
+
+    @Test
+    public void testCount()
+    {
+        CastMetrics metrics = new CastMetrics(Collections.singletonList(schema.getColumn(1)), schema.getColumnCount());
+        int sampled = 0;
+        for (int i = 0; i < CastMetrics.SAMPLING_INTERVAL * 2 + 1; i++) {
+            if (metrics.addCell(1)) {
+                metrics.addSampledNanos(1, 10);
+                sampled++;
+            }
+        }
+        metrics.addNull(1);
+        assertEquals(3, sampled);
+        assertEquals(CastMetrics.SAMPLING_INTERVAL * 2 + 1, metrics.getCells(schema.getColumn(1)));
+        assertEquals(1, metrics.getNulls(schema.getColumn(1)));
+        assertEquals(10 * (CastMetrics.SAMPLING_INTERVAL * 2 + 1), metrics.getEstimatedNanos(schema.getColumn(1)));
+        assertEquals(0, metrics.getCells(schema.getColumn(0)));
+        assertEquals(0, metrics.getEstimatedNanos(schema.getColumn(0)));
+    }
+
+    @Test
+    public void testFailures()
+    {
+        CastMetrics metrics = new CastMetrics(schema.getColumns(), schema.getColumnCount());
+        metrics.addFailure(0, "cannot cast String to long: \"foo\"");
+        metrics.addFailure(0, "cannot cast String to long: \"bar\"");
+        metrics.addFailure(0, "No results for path: $.a.x");
+        for (int i = 0; i < CastMetrics.MAX_CAUSES + 2; i++) {
+            metrics.addFailure(1, "cause" + i);
+        }
+        Map<String, Long> failures = metrics.getFailures(schema.getColumn(0));
+        assertEquals(Long.valueOf(2), failures.get("cannot cast String to long"));
+        assertEquals(Long.valueOf(1), failures.get("No results for path"));
+        failures = metrics.getFailures(schema.getColumn(1));
+        assertEquals(CastMetrics.MAX_CAUSES + 1, failures.size());
+        assertEquals(Long.valueOf(2), failures.get(CastMetrics.OTHER_CAUSE));
+    }
+
+    @Test
+    public void testToJson()
+    {
+        CastMetrics metrics = new CastMetrics(Collections.singletonList(schema.getColumn(0)), schema.getColumnCount());
+        metrics.addCell(0);
+        metrics.addNull(0);
+        metrics.addFailure(0, "cannot cast String to long: \"foo\"");
+        String json = metrics.toJson();
+        assertTrue(json.startsWith("{\"columns\":[{\"name\":\"a\",\"cells\":1,\"nulls\":1,"
+                + "\"failures\":{\"cannot cast String to long\":1},"));
+        assertFalse(json.contains("\"b\""));
+    }
+}
@@ -0,0 +1,82 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DoubleFormatterTest
+{
+    @Test
+    public void testCompile()
+    {
+        assertNull(DoubleFormatter.compile("default", null));
+        DoubleFormatter.compile("plain", null);
+        DoubleFormatter.compile("default", 2);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testCompileUnknownFormat()
+    {
+        DoubleFormatter.compile("scientific", null);
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testCompileNegativeDecimals()
+    {
+        DoubleFormatter.compile("plain", -1);
+    }
+
+    @Test
+    public void testPlain()
+    {
+        DoubleFormatter formatter = DoubleFormatter.compile("plain", null);
+        assertEquals("10000000.0", formatter.format(1.0E7));
+        assertEquals("0.0", formatter.format(0.0));
+        assertEquals("-0.0", formatter.format(-0.0));
+        assertEquals("1.5", formatter.format(1.5));
+        assertEquals("-123.456", formatter.format(-123.456));
+        assertEquals("0.1", formatter.format(0.1));
+        assertEquals("0.3", formatter.format(0.3));
+        assertEquals("0.30000000000000004", formatter.format(0.1 + 0.2));
+        assertEquals("0.0001", formatter.format(1.0E-4));
+        assertEquals("12345678901234567000.0", formatter.format(1.2345678901234567E19));
+        assertEquals("NaN", formatter.format(Double.NaN));
+        assertEquals("-Infinity", formatter.format(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void testDecimals()
+    {
+        assertEquals("0.10", DoubleFormatter.compile("default", 2).format(0.1));
+        assertEquals("1.01", DoubleFormatter.compile("default", 2).format(1.005));
+        assertEquals("10.00", DoubleFormatter.compile("default", 2).format(9.996));
+        assertEquals("-2", DoubleFormatter.compile("plain", 0).format(-1.5));
+        assertEquals("0.00", DoubleFormatter.compile("plain", 2).format(-0.001));
+        assertEquals("10000000.000", DoubleFormatter.compile("plain", 3).format(1.0E7));
+        assertEquals("0.000", DoubleFormatter.compile("plain", 3).format(1.0E-30));
+        assertEquals("12345678901234567000.00", DoubleFormatter.compile("plain", 2).format(1.2345678901234567E19));
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        DoubleFormatter formatter = DoubleFormatter.compile("plain", null);
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            double value = i % 2 == 0
+                    ? Double.longBitsToDouble(random.nextLong())
+                    : random.nextInt(100000000) / Math.pow(10, random.nextInt(10));
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            String formatted = formatter.format(value);
+            assertFalse(formatted, formatted.contains("E"));
+            assertEquals(formatted, value, Double.parseDouble(formatted), 0.0);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.time.Timestamp;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class FastTimestampFormatterTest
+{
+    @Test
+    public void testCompile()
+    {
+        assertNotNull(FastTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%N %z", "UTC"));
+        assertNotNull(FastTimestampFormatter.compile("%FT%T%z", "-05:30"));
+        assertNull(FastTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%N %z", "Asia/Tokyo"));
+        assertNull(FastTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%3N", "UTC"));
+        assertNull(FastTimestampFormatter.compile("%s", "UTC"));
+    }
+
+    @Test
+    public void testFormat()
+    {
+        FastTimestampFormatter formatter = FastTimestampFormatter.compile("%Y-%m-%d %H:%M:%S.%N %z", "UTC");
+        assertEquals("2016-05-12 20:14:13.123456000 +0000", formatter.format(Timestamp.ofEpochSecond(1463084053, 123456000)));
+        assertEquals("2016-05-12 20:14:14.000000000 +0000", formatter.format(Timestamp.ofEpochSecond(1463084054)));
+        assertEquals("2016-05-13 00:00:00.000000001 +0000", formatter.format(Timestamp.ofEpochSecond(1463097600, 1)));
+        assertEquals("1969-12-31 23:59:59.000000000 +0000", formatter.format(Timestamp.ofEpochSecond(-1)));
+
+        formatter = FastTimestampFormatter.compile("%Y-%m-%dT%H:%M:%S%z", "+09:00");
+        assertEquals("2016-05-13T05:14:13+0900", formatter.format(Timestamp.ofEpochSecond(1463084053)));
+        formatter = FastTimestampFormatter.compile("%Y/%m/%d %H%%", "-0130");
+        assertEquals("2016/05/12 18%", formatter.format(Timestamp.ofEpochSecond(1463084053)));
+    }
+
+    @Test
+    public void testFormatOutOfRange()
+    {
+        FastTimestampFormatter formatter = FastTimestampFormatter.compile("%Y-%m-%d", "UTC");
+        assertNull(formatter.format(Timestamp.ofEpochSecond(253402300800L))); // 10000-01-01
+        assertEquals("9999-12-31", formatter.format(Timestamp.ofEpochSecond(253402300799L)));
+    }
+}
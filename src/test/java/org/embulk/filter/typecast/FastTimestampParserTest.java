@@ -0,0 +1,72 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.time.Timestamp;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class FastTimestampParserTest
+{
+    @Test
+    public void testCompile()
+    {
+        assertNotNull(FastTimestampParser.compile("%Y-%m-%d %H:%M:%S.%N %z", "UTC"));
+        assertNotNull(FastTimestampParser.compile("%Y-%m-%dT%H:%M:%S.%N%z", "Asia/Tokyo"));
+        assertNotNull(FastTimestampParser.compile("%F %T", "+09:00"));
+        assertNotNull(FastTimestampParser.compile("%Y/%m/%d", "UTC"));
+        assertNull(FastTimestampParser.compile("%Y-%m-%d %H:%M:%S", "Asia/Tokyo"));
+        assertNull(FastTimestampParser.compile("%Y-%m-%d %H:%M:%S %Z", "UTC"));
+        assertNull(FastTimestampParser.compile("%s", "UTC"));
+        assertNull(FastTimestampParser.compile("%H:%M:%S", "UTC"));
+        assertNull(FastTimestampParser.compile("%Y-%m-%d %3N", "UTC"));
+        assertNull(FastTimestampParser.compile("java:yyyy-MM-dd", "UTC"));
+    }
+
+    @Test
+    public void testParse()
+    {
+        FastTimestampParser parser = FastTimestampParser.compile("%Y-%m-%d %H:%M:%S.%N %z", "UTC");
+        assertEquals(Timestamp.ofEpochSecond(1463084053, 123456000), parser.parse("2016-05-12 20:14:13.123456 +0000"));
+        assertEquals(Timestamp.ofEpochSecond(1463084053 - 9 * 3600, 100000000), parser.parse("2016-05-12 20:14:13.1 +09:00"));
+        assertEquals(Timestamp.ofEpochSecond(1463084053 + 3600 + 1800, 123456789), parser.parse("2016-05-12 20:14:13.123456789 -0130"));
+        assertEquals(Timestamp.ofEpochSecond(1463084053, 0), parser.parse("2016-05-12 20:14:13.0 Z"));
+
+        parser = FastTimestampParser.compile("%Y-%m-%d %H:%M:%S", "+09:00");
+        assertEquals(Timestamp.ofEpochSecond(1463084053 - 9 * 3600), parser.parse("2016-05-12 20:14:13"));
+        assertEquals(Timestamp.ofEpochSecond(951782400 - 9 * 3600), parser.parse("2000-02-29 00:00:00"));
+    }
+
+    @Test
+    public void testParseNotInLayout()
+    {
+        FastTimestampParser parser = FastTimestampParser.compile("%Y-%m-%d %H:%M:%S.%N %z", "UTC");
+        assertNull(parser.parse("2016-05-12 20:14:13 +0000"));
+        assertNull(parser.parse("2016-5-12 20:14:13.1 +0000"));
+        assertNull(parser.parse("2016-05-12 20:14:13.1234567890 +0000"));
+        assertNull(parser.parse("2016-05-12 20:14:13.1 +0000 "));
+        assertNull(parser.parse("2016-05-12 20:14:13.1 UTC"));
+        assertNull(parser.parse("2016-05-12 20:14:13.1 +09"));
+        assertNull(parser.parse("2016-02-30 20:14:13.1 +0000"));
+        assertNull(parser.parse("2016-05-12 24:00:00.0 +0000"));
+        assertNull(parser.parse("2016-05-12 23:59:60.0 +0000"));
+        assertNull(parser.parse("foo"));
+        assertNull(parser.parse(""));
+    }
+
+    @Test
+    public void testEpochDay()
+    {
+        for (int year : new int[] {0, 1, 1600, 1900, 1969, 1970, 2000, 2016, 2100, 9999}) {
+            for (int month = 1; month <= 12; month++) {
+                LocalDate date = LocalDate.of(year, month, 1);
+                for (int day = 1; day <= date.lengthOfMonth(); day++) {
+                    assertEquals(LocalDate.of(year, month, day).toEpochDay(), FastTimestampParser.epochDay(year, month, day));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.filter.typecast.cast.StringCast;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class InvalidValueReporterTest
+{
+    private final Schema schema = new Schema(Arrays.asList(
+            new Column(0, "a", Types.LONG),
+            new Column(1, "b", Types.JSON)));
+    private final CastMetrics metrics = new CastMetrics(schema.getColumns(), schema.getColumnCount());
+
+    @Test
+    public void testCount()
+    {
+        InvalidValueReporter reporter = new InvalidValueReporter(schema, 2, 16, 0, metrics);
+        for (int i = 0; i < 5; i++) {
+            reporter.report(schema.getColumn(0), "cannot cast String to long: \"foo\"");
+        }
+        reporter.report(schema.getColumn(1), "No results for path: $.b.x");
+        reporter.summarize();
+        assertEquals(5, reporter.getCount(schema.getColumn(0)));
+        assertEquals(1, reporter.getCount(schema.getColumn(1)));
+        assertEquals(Long.valueOf(5), metrics.getFailures(schema.getColumn(0)).get("cannot cast String to long"));
+    }
+
+    @Test
+    public void testReportString()
+    {
+        InvalidValueReporter reporter = new InvalidValueReporter(schema, 2, 16, 0, metrics);
+        InvalidValueReporter.Position position = new InvalidValueReporter.Position();
+        Column outputColumn = new Column(0, "a", Types.LONG);
+        for (int i = 0; i < 5; i++) {
+            reporter.reportString(schema.getColumn(0), outputColumn, "long", StringCast.buildErrorCause("long"), "foo", position);
+        }
+        reporter.report(schema.getColumn(0), "cannot cast String to long: \"bar\"");
+        assertEquals(6, reporter.getCount(schema.getColumn(0)));
+        assertEquals(Long.valueOf(6), metrics.getFailures(schema.getColumn(0)).get("cannot cast String to long"));
+    }
+
+    @Test
+    public void testTruncate()
+    {
+        InvalidValueReporter reporter = new InvalidValueReporter(schema, 10, 8, 60, metrics);
+        assertEquals("short", reporter.truncate("short"));
+        assertEquals("12345678", reporter.truncate("12345678"));
+        assertEquals("12345678... (4 characters truncated)", reporter.truncate("123456789012"));
+    }
+}
@@ -0,0 +1,117 @@
+package org.embulk.filter.typecast;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.embulk.config.ConfigException;
+import org.embulk.spi.Column;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InvalidValueSinkTest
+{
+    private final Schema schema = new Schema(Arrays.asList(
+            new Column(0, "a", Types.STRING),
+            new Column(1, "b", Types.STRING)));
+    private final Column outputColumn = new Column(0, "a", Types.LONG);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testWrite() throws IOException
+    {
+        Path path = Files.createTempFile("embulk-filter-typecast", ".jsonl");
+        try {
+            CastMetrics metrics = new CastMetrics(schema.getColumns(), schema.getColumnCount());
+            InvalidValueReporter.Position position = new InvalidValueReporter.Position();
+            InvalidValueReporter reporter = new InvalidValueReporter(schema, 10, 256, 0, metrics,
+                    InvalidValueSink.acquire(path.toString(), 4, true));
+            assertTrue(reporter.hasSink());
+            for (int i = 0; i < 10; i++) {
+                position.page = 2;
+                position.record = i;
+                reporter.report(schema.getColumn(0), outputColumn, "foo" + i, "cannot cast String to long: \"foo" + i + "\"", position);
+            }
+            reporter.close();
+            reporter.close();
+
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            assertEquals(10, lines.size());
+            JsonNode line = objectMapper.readTree(lines.get(3));
+            assertEquals("a", line.get("column").asText());
+            assertEquals("foo3", line.get("value").asText());
+            assertEquals("long", line.get("type").asText());
+            assertEquals("cannot cast String to long: \"foo3\"", line.get("error").asText());
+            assertEquals(0, line.get("task").asLong());
+            assertEquals(2, line.get("page").asLong());
+            assertEquals(3, line.get("record").asLong());
+            assertEquals(10, reporter.getCount(schema.getColumn(0)));
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testShared() throws IOException
+    {
+        Path path = Files.createTempFile("embulk-filter-typecast", ".jsonl");
+        try {
+            InvalidValueSink first = InvalidValueSink.acquire(path.toString(), 16, false);
+            InvalidValueSink second = InvalidValueSink.acquire(path.toString(), 16, false);
+            assertTrue(first == second);
+            int firstTask = first.nextTask();
+            int secondTask = second.nextTask();
+            first.offer(new InvalidValueSink.Entry(firstTask, "a", "x", "long", "error", 0, 0));
+            InvalidValueSink.release(first);
+            second.offer(new InvalidValueSink.Entry(secondTask, "b", "y", "long", "error", 0, 1));
+            InvalidValueSink.release(second);
+
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            assertEquals(2, lines.size());
+            assertEquals(0, objectMapper.readTree(lines.get(0)).get("task").asLong());
+            assertEquals(1, objectMapper.readTree(lines.get(1)).get("task").asLong());
+            assertEquals(0, second.getDropped());
+        }
+        finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testMismatchedQueueOptions() throws IOException
+    {
+        Path path = Files.createTempFile("embulk-filter-typecast", ".jsonl");
+        InvalidValueSink sink = InvalidValueSink.acquire(path.toString(), 16, false);
+        try {
+            try {
+                InvalidValueSink.acquire(path.toString(), 16, true);
+                fail();
+            }
+            catch (Throwable t) {
+                assertTrue(t instanceof ConfigException);
+            }
+            try {
+                InvalidValueSink.acquire(path.toString(), 32, false);
+                fail();
+            }
+            catch (Throwable t) {
+                assertTrue(t instanceof ConfigException);
+            }
+        }
+        finally {
+            InvalidValueSink.release(sink);
+            Files.deleteIfExists(path);
+        }
+    }
+}
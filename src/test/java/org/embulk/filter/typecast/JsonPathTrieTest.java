@@ -0,0 +1,134 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigException;
+import org.embulk.spi.DataException;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class JsonPathTrieTest
+{
+    private static Value document()
+    {
+        // {"key1":"9999","nested":{"flag":"true","keep":{"x":1}},"array":["1","2"],"objects":[{"v":1},{"v":2}]}
+        return ValueFactory.newMap(
+                ValueFactory.newString("key1"), ValueFactory.newString("9999"),
+                ValueFactory.newString("nested"), ValueFactory.newMap(
+                        ValueFactory.newString("flag"), ValueFactory.newString("true"),
+                        ValueFactory.newString("keep"), ValueFactory.newMap(
+                                ValueFactory.newString("x"), ValueFactory.newInteger(1))),
+                ValueFactory.newString("array"), ValueFactory.newArray(
+                        ValueFactory.newString("1"), ValueFactory.newString("2")),
+                ValueFactory.newString("objects"), ValueFactory.newArray(
+                        ValueFactory.newMap(ValueFactory.newString("v"), ValueFactory.newInteger(1)),
+                        ValueFactory.newMap(ValueFactory.newString("v"), ValueFactory.newInteger(2))));
+    }
+
+    private static JsonPathTrie build(boolean stopOnInvalidRecord, Object... pathAndTypes)
+    {
+        List<NativeJsonPath> jsonPaths = new ArrayList<>();
+        for (int i = 0; i < pathAndTypes.length; i += 2) {
+            jsonPaths.add(NativeJsonPath.compile((String) pathAndTypes[i], (Type) pathAndTypes[i + 1]));
+        }
+        return JsonPathTrie.build(jsonPaths, stopOnInvalidRecord);
+    }
+
+    private static Value get(Value map, String key)
+    {
+        return map.asMapValue().map().get(ValueFactory.newString(key));
+    }
+
+    @Test
+    public void testApplyProperty()
+    {
+        Value casted = build(true, "$.col.key1", Types.LONG).apply(document());
+        assertEquals(ValueFactory.newInteger(9999), get(casted, "key1"));
+
+        casted = build(true, "$['col']['nested']['flag']", Types.BOOLEAN).apply(document());
+        assertEquals(ValueFactory.newBoolean(true), get(get(casted, "nested"), "flag"));
+    }
+
+    @Test
+    public void testApplyMultiplePaths()
+    {
+        Value casted = build(true,
+                "$.col.key1", Types.LONG,
+                "$.col.nested.flag", Types.BOOLEAN,
+                "$.col.array[0]", Types.LONG,
+                "$.col.objects[*].v", Types.STRING).apply(document());
+        assertEquals(ValueFactory.newInteger(9999), get(casted, "key1"));
+        assertEquals(ValueFactory.newBoolean(true), get(get(casted, "nested"), "flag"));
+        assertEquals(ValueFactory.newInteger(1), get(casted, "array").asArrayValue().get(0));
+        assertEquals(ValueFactory.newString("2"), get(get(casted, "objects").asArrayValue().get(1), "v"));
+    }
+
+    @Test
+    public void testApplySharesUnchangedBranches()
+    {
+        Value document = document();
+        Value casted = build(true, "$.col.nested.flag", Types.BOOLEAN).apply(document);
+        assertSame(get(document, "array"), get(casted, "array"));
+        assertSame(get(get(document, "nested"), "keep"), get(get(casted, "nested"), "keep"));
+
+        // casting to the same type changes nothing
+        assertSame(document, build(true, "$.col.key1", Types.STRING).apply(document));
+    }
+
+    @Test
+    public void testApplyIndex()
+    {
+        Value casted = build(true, "$.col.array[-1]", Types.LONG).apply(document());
+        assertEquals(ValueFactory.newString("1"), get(casted, "array").asArrayValue().get(0));
+        assertEquals(ValueFactory.newInteger(2), get(casted, "array").asArrayValue().get(1));
+    }
+
+    @Test
+    public void testApplyWildcard()
+    {
+        Value casted = build(true, "$.col.array[*]", Types.DOUBLE).apply(document());
+        assertEquals(ValueFactory.newFloat(1.0), get(casted, "array").asArrayValue().get(0));
+        assertEquals(ValueFactory.newFloat(2.0), get(casted, "array").asArrayValue().get(1));
+
+        casted = build(true, "$.col.nested.*", Types.STRING).apply(document());
+        assertEquals(ValueFactory.newString("{\"x\":1}"), get(get(casted, "nested"), "keep"));
+    }
+
+    @Test
+    public void testApplyNotFound()
+    {
+        Value document = document();
+        assertSame(document, build(false, "$.col.no_key", Types.STRING).apply(document));
+        assertSame(document, build(true, "$.col.no_key[*]", Types.STRING).apply(document));
+        assertThrows(DataException.class, () -> build(true, "$.col.no_key", Types.STRING).apply(document()));
+        assertThrows(DataException.class, () -> build(true, "$.col.array[5]", Types.STRING).apply(document()));
+        assertThrows(DataException.class, () -> build(true, "$.col.key1.x", Types.STRING).apply(document()));
+    }
+
+    @Test
+    public void testApplyInvalidValue()
+    {
+        assertThrows(DataException.class, () -> build(false, "$.col.nested.flag", Types.LONG).apply(document()));
+    }
+
+    @Test
+    public void testBuildOverlap()
+    {
+        build(true, "$.col.a", Types.LONG, "$.col.a", Types.LONG);
+        build(true, "$.col.a.b", Types.LONG, "$.col.a.c", Types.LONG, "$.col.d[0]", Types.LONG, "$.col.d[1]", Types.LONG);
+        assertThrows(ConfigException.class, () -> build(true, "$.col.a", Types.LONG, "$.col.a", Types.STRING));
+        assertThrows(ConfigException.class, () -> build(true, "$.col.a", Types.LONG, "$.col.a.b", Types.LONG));
+        assertThrows(ConfigException.class, () -> build(true, "$.col.a.b", Types.LONG, "$.col.a", Types.LONG));
+        assertThrows(ConfigException.class, () -> build(true, "$.col.a[*]", Types.LONG, "$.col.a[0]", Types.LONG));
+        assertThrows(ConfigException.class, () -> build(true, "$.col.a.b", Types.LONG, "$.col.*.c", Types.LONG));
+        assertThrows(ConfigException.class, () -> build(true, "$.col.a[-1]", Types.LONG, "$.col.a[1]", Types.LONG));
+    }
+}
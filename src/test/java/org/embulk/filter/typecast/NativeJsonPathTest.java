@@ -0,0 +1,32 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.spi.type.Types;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class NativeJsonPathTest
+{
+    @Test
+    public void testCompileUnsupported()
+    {
+        assertNotNull(NativeJsonPath.compile("$.col.a[0].b", Types.STRING));
+        assertNotNull(NativeJsonPath.compile("$['col']['a.b']", Types.STRING));
+        assertNotNull(NativeJsonPath.compile("$.col.a[*]", Types.STRING));
+        assertNotNull(NativeJsonPath.compile("$.col.*", Types.STRING));
+        assertNull(NativeJsonPath.compile("$.col.a[0:2]", Types.STRING));
+        assertNull(NativeJsonPath.compile("$.col.a[1,2]", Types.STRING));
+        assertNull(NativeJsonPath.compile("$.col.a[?(@ > 5000)]", Types.STRING));
+        assertNull(NativeJsonPath.compile("$['col','other']", Types.STRING));
+        assertNull(NativeJsonPath.compile("$..a", Types.STRING));
+    }
+
+    @Test
+    public void testColumnName()
+    {
+        assertEquals("col", NativeJsonPath.compile("$.col.a", Types.STRING).getColumnName());
+        assertEquals("a.b", NativeJsonPath.compile("$['a.b'].c", Types.STRING).getColumnName());
+    }
+}
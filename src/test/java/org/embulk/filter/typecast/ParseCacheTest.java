@@ -0,0 +1,80 @@
+package org.embulk.filter.typecast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParseCacheTest
+{
+    @Test
+    public void testGetAndPut()
+    {
+        ParseCache<Long> cache = new ParseCache<>(16);
+        assertNull(cache.get("1"));
+        cache.put("1", 1L);
+        assertEquals(Long.valueOf(1L), cache.get("1"));
+        assertEquals(Long.valueOf(1L), cache.get(new String("1")));
+        assertNull(cache.get("2"));
+    }
+
+    @Test
+    public void testGetAndPutPrimitives()
+    {
+        ParseCache<Long> longCache = new ParseCache<>(16);
+        long[] longResult = new long[1];
+        assertFalse(longCache.getLong("-1", longResult));
+        longCache.putLong("-1", -1L);
+        assertTrue(longCache.getLong(new String("-1"), longResult));
+        assertEquals(-1L, longResult[0]);
+        assertFalse(longCache.getLong("2", longResult));
+
+        ParseCache<Double> doubleCache = new ParseCache<>(16);
+        double[] doubleResult = new double[1];
+        assertFalse(doubleCache.getDouble("-0.0", doubleResult));
+        doubleCache.putDouble("-0.0", -0.0);
+        doubleCache.putDouble("NaN", Double.NaN);
+        assertTrue(doubleCache.getDouble("-0.0", doubleResult));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(doubleResult[0]));
+        assertTrue(doubleCache.getDouble("NaN", doubleResult));
+        assertTrue(Double.isNaN(doubleResult[0]));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        ParseCache<Long> cache = new ParseCache<>(0);
+        assertFalse(cache.isEnabled());
+        cache.put("1", 1L);
+        assertNull(cache.get("1"));
+    }
+
+    @Test
+    public void testRepeatedValuesKeepCacheEnabled()
+    {
+        ParseCache<Long> cache = new ParseCache<>(16);
+        for (int i = 0; i < ParseCache.WINDOW * 3; i++) {
+            String key = String.valueOf(i % 4);
+            if (cache.get(key) == null) {
+                cache.put(key, (long) (i % 4));
+            }
+        }
+        assertTrue(cache.isEnabled());
+    }
+
+    @Test
+    public void testUniqueValuesDisableCache()
+    {
+        ParseCache<Long> cache = new ParseCache<>(16);
+        for (int i = 0; i < ParseCache.WINDOW; i++) {
+            String key = String.valueOf(i);
+            if (cache.get(key) == null) {
+                cache.put(key, (long) i);
+            }
+        }
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("0"));
+    }
+}
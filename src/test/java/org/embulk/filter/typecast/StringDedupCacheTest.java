@@ -0,0 +1,66 @@
+package org.embulk.filter.typecast;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StringDedupCacheTest
+{
+    @Test
+    public void testGetAndPut()
+    {
+        StringDedupCache cache = new StringDedupCache(16);
+        assertNull(cache.get(0L));
+        cache.put(0L, "0");
+        assertEquals("0", cache.get(0L));
+        assertNull(cache.get(1L));
+        cache.put(StringDedupCache.doubleKey(-0.0), "-0.0");
+        assertNull(cache.get(StringDedupCache.doubleKey(0.0)));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        StringDedupCache cache = new StringDedupCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put(1L, "1");
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    public void testRepeatedValuesKeepCacheEnabled()
+    {
+        StringDedupCache cache = new StringDedupCache(16);
+        for (int i = 0; i < StringDedupCache.WINDOW * 3; i++) {
+            long key = 200 + i % 4;
+            if (cache.get(key) == null) {
+                cache.put(key, String.valueOf(key));
+            }
+        }
+        assertTrue(cache.isEnabled());
+    }
+
+    @Test
+    public void testUniqueValuesDisableCache()
+    {
+        StringDedupCache cache = new StringDedupCache(16);
+        for (int i = 0; i < StringDedupCache.WINDOW; i++) {
+            if (cache.get(i) == null) {
+                cache.put(i, String.valueOf(i));
+            }
+        }
+        assertFalse(cache.isEnabled());
+    }
+
+    @Test
+    public void testTimestampKey()
+    {
+        assertEquals(1463084053123456789L, StringDedupCache.timestampKey(1463084053L, 123456789));
+        assertEquals(-999999999L, StringDedupCache.timestampKey(-1L, 1));
+        assertEquals(Long.MIN_VALUE, StringDedupCache.timestampKey(Long.MAX_VALUE / 1_000_000_000L, 0));
+        assertEquals(Long.MIN_VALUE, StringDedupCache.timestampKey(-253402300800L, 0));
+    }
+}
@@ -0,0 +1,157 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+public class TypecastAllocationTest
+{
+    private static final int RECORDS = 100000;
+    private static final int ROUNDS = 5;
+    // extra bytes per record allowed for casting 5 primitive columns, compared with copying them
+    private static final long BYTES_PER_RECORD_BUDGET = 16;
+    private static final Value JSON_VALUE = ValueFactory.newMap(ValueFactory.newString("k"), ValueFactory.newInteger(1));
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private final Schema inputSchema = new Schema(Arrays.asList(
+            new Column(0, "long_value", Types.LONG),
+            new Column(1, "double_value", Types.DOUBLE),
+            new Column(2, "flag", Types.LONG),
+            new Column(3, "ts1", Types.TIMESTAMP),
+            new Column(4, "ts2", Types.TIMESTAMP),
+            new Column(5, "json_value", Types.JSON)));
+
+    private static Map<String, String> column(String name, String type)
+    {
+        Map<String, String> column = new HashMap<>();
+        column.put("name", name);
+        column.put("type", type);
+        return column;
+    }
+
+    private List<Page> buildInputPages()
+    {
+        List<Page> pages = new ArrayList<>();
+        PageOutput output = new PageOutput()
+        {
+            @Override
+            public void add(Page page)
+            {
+                pages.add(page);
+            }
+
+            @Override
+            public void finish()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        try (PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), inputSchema, output)) {
+            for (int i = 0; i < RECORDS; i++) {
+                pageBuilder.setLong(0, i);
+                pageBuilder.setDouble(1, i * 0.5);
+                pageBuilder.setLong(2, i % 2);
+                pageBuilder.setTimestamp(3, Timestamp.ofEpochSecond(i));
+                pageBuilder.setTimestamp(4, Timestamp.ofEpochSecond(i, 500000000));
+                pageBuilder.setJson(5, JSON_VALUE);
+                pageBuilder.addRecord();
+            }
+            pageBuilder.finish();
+        }
+        return pages;
+    }
+
+    private static long currentThreadAllocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // allocated bytes per record of the last round, earlier rounds warm up the JIT
+    private long allocatedBytesPerRecord(List<Map<String, String>> columns)
+    {
+        ConfigSource config = ConfigMapperFactory.withDefault().newConfigSource();
+        config.set("columns", columns);
+        TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+        long[] bytesPerRecord = new long[1];
+        plugin.transaction(config, inputSchema, (taskSource, outputSchema) -> {
+            for (int round = 0; round < ROUNDS; round++) {
+                List<Page> pages = buildInputPages();
+                PageOutput output = plugin.open(taskSource, inputSchema, outputSchema, new PageOutput()
+                {
+                    @Override
+                    public void add(Page page)
+                    {
+                        page.release();
+                    }
+
+                    @Override
+                    public void finish()
+                    {
+                    }
+
+                    @Override
+                    public void close()
+                    {
+                    }
+                });
+                long before = currentThreadAllocatedBytes();
+                for (Page page : pages) {
+                    output.add(page);
+                }
+                output.finish();
+                long after = currentThreadAllocatedBytes();
+                output.close();
+                bytesPerRecord[0] = (after - before) / RECORDS;
+            }
+        });
+        return bytesPerRecord[0];
+    }
+
+    @Test
+    public void testPrimitiveCastsDoNotAllocate()
+    {
+        // A config of no cast at all forwards pages as they are, so that the baseline casts a JSONPath
+        // which keeps its type, and copies the primitive columns into output pages. Output columns are
+        // not wider than input columns, so output pages cost at most as much as copying them.
+        long copy = allocatedBytesPerRecord(Arrays.asList(
+                column("long_value", "long"),
+                column("$.json_value.k", "long")));
+        long cast = allocatedBytesPerRecord(Arrays.asList(
+                column("long_value", "double"),
+                column("double_value", "long"),
+                column("flag", "boolean"),
+                column("ts1", "long"),
+                column("ts2", "double"),
+                column("$.json_value.k", "long")));
+        assertTrue(String.format("allocated %d bytes per record, %d bytes when copying", cast, copy),
+                cast - copy <= BYTES_PER_RECORD_BUDGET);
+    }
+}
@@ -3,18 +3,27 @@ package org.embulk.filter.typecast;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.jayway.jsonpath.matchers.JsonPathMatchers;
+import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.exec.PartialExecutionException;
 import org.embulk.formatter.csv.CsvFormatterPlugin;
 import org.embulk.input.file.LocalFileInputPlugin;
 import org.embulk.output.file.LocalFileOutputPlugin;
 import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.Column;
 import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
 import org.embulk.spi.FileInputPlugin;
 import org.embulk.spi.FileOutputPlugin;
 import org.embulk.spi.FilterPlugin;
 import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.PageReader;
 import org.embulk.spi.ParserPlugin;
+import org.embulk.spi.Schema;
+import org.embulk.spi.type.Types;
 import org.embulk.test.EmbulkTestRuntime;
 import org.embulk.test.TestingEmbulk;
 import org.embulk.util.json.JsonParser;
@@ -27,6 +36,7 @@ import org.junit.Test;
 import org.msgpack.value.Value;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
@@ -41,6 +51,9 @@ import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 
 public class TypecastFilterPluginTest
@@ -155,6 +168,27 @@ public class TypecastFilterPluginTest
         assertEquals("98765", row.get(2));
     }
 
+    @Test
+    public void testTypeCastPassThroughColumns() throws IOException
+    {
+        ConfigSource input = getInputConfigSource("data.csv", buildInputColumnConfigs());
+        Path tempDir = Files.createTempDirectory("embulk-filter-typecast-testing");
+        Path outputFile = tempDir.resolve("output.csv");
+
+        ConfigSource filter = newConfig();
+        filter.set("type", "typecast");
+        filter.set("columns", Collections.singletonList(inputColumn("long_value", "string")));
+
+        embulk.inputBuilder().in(input).outputPath(outputFile).filters(Collections.singletonList(filter)).run();
+        byte[] result = Files.readAllBytes(outputFile);
+        List<String> row = CSV_MAPPER.readValue(result, new TypeReference<List<String>>() {});
+        assertEquals("hoge", row.get(0));
+        assertEquals("12345", row.get(1));
+        assertEquals("98765.4321", row.get(2));
+        assertEquals("2023-08-24 11:43:01.000000 +0000", row.get(3));
+        assertEquals("{\"key1\":9999,\"key2\":\"true\"}", row.get(4));
+    }
+
     @Test
     public void testTypeCastTimestamp() throws IOException
     {
@@ -218,6 +252,27 @@ public class TypecastFilterPluginTest
         assertThat(row.get(4), hasJsonPath("$.key2", equalTo(true)));
     }
 
+    @Test
+    public void testTypeCastJsonPathTimestamp() throws IOException
+    {
+        ConfigSource input = getInputConfigSource("data.csv", buildInputColumnConfigs());
+        Path tempDir = Files.createTempDirectory("embulk-filter-typecast-testing");
+        Path outputFile = tempDir.resolve("output.csv");
+
+        ConfigSource filter = newConfig();
+        filter.set("type", "typecast");
+
+        Map<String, String> jsonColumn = inputColumn("$.json_value.key1", "timestamp");
+        jsonColumn.put("output_format", "%Y-%m-%dT%H:%M:%SZ");
+        filter.set("columns", Collections.singletonList(jsonColumn));
+
+        embulk.inputBuilder().in(input).outputPath(outputFile).filters(Collections.singletonList(filter)).run();
+        byte[] result = Files.readAllBytes(outputFile);
+        List<String> row = CSV_MAPPER.readValue(result, new TypeReference<List<String>>() {});
+        assertThat(row.get(4), hasJsonPath("$.key1", equalTo("1970-01-01T02:46:39Z")));
+        assertThat(row.get(4), hasJsonPath("$.key2", equalTo("true")));
+    }
+
     @Test
     public void testTypeCastJsonPathWithNoResults() throws IOException
     {
@@ -277,4 +332,302 @@ public class TypecastFilterPluginTest
         assertThat(row.get(0), hasJsonPath("$.a[0].b", equalTo("123")));
         assertThat(row.get(0), hasJsonPath("$.a[0].c", equalTo(456.0)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTypeCastFallbackJsonPathOfObjects() throws IOException
+    {
+        ConfigSource input = getInputConfigSource("data_complex.csv", Collections.singletonList(inputColumn("complex_json", "json")));
+        Path tempDir = Files.createTempDirectory("embulk-filter-typecast-testing");
+        Path outputFile = tempDir.resolve("output.csv");
+
+        ConfigSource filter = newConfig();
+        filter.set("type", "typecast");
+
+        // a slice is not in the native subset, so that it is cast by Jayway JsonPath
+        filter.set("columns", Collections.singletonList(inputColumn("$.complex_json.a[0:1]", "string")));
+
+        embulk.inputBuilder().in(input).outputPath(outputFile).filters(Collections.singletonList(filter)).run();
+        byte[] result = Files.readAllBytes(outputFile);
+        List<String> row = CSV_MAPPER.readValue(result, new TypeReference<List<String>>() {});
+        assertThat(row.get(0), hasJsonPath("$.a[0]", equalTo("{\"b\":123,\"c\":456}")));
+        assertThat(row.get(0), hasJsonPath("$.d.e", equalTo("e-value")));
+    }
+
+    @Test
+    public void testTypeCastFallbackJsonPathWithBooleanValues() throws IOException
+    {
+        Path tempDir = Files.createTempDirectory("embulk-filter-typecast-testing");
+        Path inputFile = tempDir.resolve("input.csv");
+        Path outputFile = tempDir.resolve("output.csv");
+        Files.write(inputFile, "flags\n\"[\"\"active\"\",\"\"inactive\"\",\"\"yes\"\"]\"\n".getBytes(StandardCharsets.UTF_8));
+
+        ConfigSource input = newConfig();
+        input.set("type", "file")
+                .set("path_prefix", inputFile.toString())
+                .set("parser", newConfig()
+                        .set("type", "csv")
+                        .set("header_line", true)
+                        .set("newline", "LF")
+                        .set("columns", Collections.singletonList(inputColumn("flags", "json"))));
+
+        ConfigSource filter = newConfig();
+        filter.set("type", "typecast");
+        filter.set("default_true_values", Collections.singletonList("active"));
+        filter.set("default_false_values", Collections.singletonList("inactive"));
+        // a filter expression is not in the native subset, so that it is cast by Jayway JsonPath
+        filter.set("columns", Collections.singletonList(inputColumn("$.flags[?(@ != 'yes')]", "boolean")));
+
+        embulk.inputBuilder().in(input).outputPath(outputFile).filters(Collections.singletonList(filter)).run();
+        byte[] result = Files.readAllBytes(outputFile);
+        List<String> row = CSV_MAPPER.readValue(result, new TypeReference<List<String>>() {});
+        assertEquals("[true,false,\"yes\"]", row.get(0));
+    }
+
+    @Test
+    public void testParallelismKeepsOrder() throws IOException
+    {
+        Path tempDir = Files.createTempDirectory("embulk-filter-typecast-testing");
+        Path inputFile = tempDir.resolve("input.csv");
+        Path outputFile = tempDir.resolve("output.csv");
+        int records = 5000;
+        StringBuilder csv = new StringBuilder("id,value\n");
+        for (int i = 0; i < records; i++) {
+            csv.append(i).append(',').append(i % 3 == 0 ? "invalid" : String.valueOf(i * 2)).append('\n');
+        }
+        Files.write(inputFile, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConfigSource input = newConfig();
+        input.set("type", "file")
+                .set("path_prefix", inputFile.toString())
+                .set("parser", newConfig()
+                        .set("type", "csv")
+                        .set("header_line", true)
+                        .set("newline", "LF")
+                        .set("columns", Arrays.asList(inputColumn("id", "long"), inputColumn("value", "string"))));
+
+        ConfigSource filter = newConfig();
+        filter.set("type", "typecast");
+        filter.set("columns", Arrays.asList(inputColumn("id", "string"), inputColumn("value", "long")));
+        filter.set("parallelism", 4);
+
+        embulk.inputBuilder().in(input).outputPath(outputFile).filters(Collections.singletonList(filter)).run();
+        List<String> lines = Files.readAllLines(outputFile, StandardCharsets.UTF_8);
+        assertEquals(records, lines.size());
+        for (int i = 0; i < records; i++) {
+            assertEquals(i + "," + (i % 3 == 0 ? "" : String.valueOf(i * 2)), lines.get(i));
+        }
+    }
+
+    @Test
+    public void testBatchMode() throws IOException
+    {
+        Path tempDir = Files.createTempDirectory("embulk-filter-typecast-testing");
+        Path inputFile = tempDir.resolve("input.csv");
+        Path outputFile = tempDir.resolve("output.csv");
+        int records = 3000;
+        StringBuilder csv = new StringBuilder("id,value,ts,name\n");
+        for (int i = 0; i < records; i++) {
+            csv.append(i).append(',')
+                    .append(i % 7 == 0 ? "" : (i + 0.5)).append(',')
+                    .append(i % 5 == 0 ? "" : "2023-08-24T11:43:01Z").append(',')
+                    .append("n").append(i).append('\n');
+        }
+        Files.write(inputFile, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConfigSource input = newConfig();
+        input.set("type", "file")
+                .set("path_prefix", inputFile.toString())
+                .set("parser", newConfig()
+                        .set("type", "csv")
+                        .set("header_line", true)
+                        .set("newline", "LF")
+                        .set("columns", Arrays.asList(inputColumn("id", "long"), inputColumn("value", "double"),
+                                inputColumn("ts", "timestamp", "%Y-%m-%dT%H:%M:%SZ"), inputColumn("name", "string"))));
+
+        ConfigSource filter = newConfig();
+        filter.set("type", "typecast");
+        filter.set("columns", Arrays.asList(inputColumn("id", "double"), inputColumn("value", "long"),
+                inputColumn("ts", "long"), inputColumn("name", "string")));
+        filter.set("batch_mode", true);
+        filter.set("parallelism", 2);
+
+        embulk.inputBuilder().in(input).outputPath(outputFile).filters(Collections.singletonList(filter)).run();
+        List<String> lines = Files.readAllLines(outputFile, StandardCharsets.UTF_8);
+        assertEquals(records, lines.size());
+        for (int i = 0; i < records; i++) {
+            String expected = i + ".0," + (i % 7 == 0 ? "" : String.valueOf(i)) + ","
+                    + (i % 5 == 0 ? "" : "1692877381") + ",";
+            assertEquals(expected, lines.get(i).substring(0, expected.length()));
+        }
+    }
+
+    @Test
+    public void testParallelismAddsPagesBeforeFinish()
+    {
+        Schema inputSchema = new Schema(Collections.singletonList(new Column(0, "long_value", Types.LONG)));
+        List<Page> inputPages = new ArrayList<>();
+        PageOutput inputOutput = new PageOutput()
+        {
+            @Override
+            public void add(Page page)
+            {
+                inputPages.add(page);
+            }
+
+            @Override
+            public void finish()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        // fewer pages than workers, so that all of them wait for finish()
+        try (PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), inputSchema, inputOutput)) {
+            for (int i = 0; i < 3; i++) {
+                pageBuilder.setLong(0, i);
+                pageBuilder.addRecord();
+                pageBuilder.flush();
+            }
+            pageBuilder.finish();
+        }
+        assertEquals(3, inputPages.size());
+
+        List<String> values = new ArrayList<>();
+        boolean[] finished = new boolean[1];
+        TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+        ConfigSource config = newConfig()
+                .set("columns", Collections.singletonList(inputColumn("long_value", "string")))
+                .set("parallelism", 4);
+        plugin.transaction(config, inputSchema, (taskSource, outputSchema) -> {
+            PageReader pageReader = new PageReader(outputSchema);
+            PageOutput output = plugin.open(taskSource, inputSchema, outputSchema, new PageOutput()
+            {
+                @Override
+                public void add(Page page)
+                {
+                    assertFalse("a page is added after finish()", finished[0]);
+                    pageReader.setPage(page);
+                    while (pageReader.nextRecord()) {
+                        values.add(pageReader.getString(0));
+                    }
+                }
+
+                @Override
+                public void finish()
+                {
+                    finished[0] = true;
+                }
+
+                @Override
+                public void close()
+                {
+                }
+            });
+            for (Page page : inputPages) {
+                output.add(page);
+            }
+            output.finish();
+            output.close();
+            pageReader.close();
+        });
+        assertEquals(Arrays.asList("0", "1", "2"), values);
+    }
+
+    @Test
+    public void testPassThroughForwardsPages()
+    {
+        Schema inputSchema = new Schema(Arrays.asList(
+                new Column(0, "long_value", Types.LONG),
+                new Column(1, "json_value", Types.JSON)));
+        PageOutput output = new PageOutput()
+        {
+            @Override
+            public void add(Page page)
+            {
+            }
+
+            @Override
+            public void finish()
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+
+        ConfigSource config = newConfig().set("columns", Collections.singletonList(inputColumn("long_value", "long")));
+        plugin.transaction(config, inputSchema, (taskSource, outputSchema) ->
+                assertSame(output, plugin.open(taskSource, inputSchema, outputSchema, output)));
+
+        ConfigSource castConfig = newConfig().set("columns", Collections.singletonList(inputColumn("$.json_value.a", "long")));
+        plugin.transaction(castConfig, inputSchema, (taskSource, outputSchema) -> {
+            PageOutput filtered = plugin.open(taskSource, inputSchema, outputSchema, output);
+            assertNotSame(output, filtered);
+            filtered.close();
+        });
+    }
+
+    @Test
+    public void testUnitOnlyForEpochCasts()
+    {
+        Schema inputSchema = new Schema(Arrays.asList(
+                new Column(0, "long_value", Types.LONG),
+                new Column(1, "string_value", Types.STRING),
+                new Column(2, "json_value", Types.JSON)));
+        TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+
+        Map<String, String> epochColumn = inputColumn("long_value", "timestamp");
+        epochColumn.put("unit", "milli");
+        plugin.transaction(newConfig().set("columns", Collections.singletonList(epochColumn)), inputSchema,
+                (taskSource, outputSchema) -> assertEquals(Types.TIMESTAMP, outputSchema.getColumnType(0)));
+
+        Map<String, String> stringColumn = inputColumn("string_value", "timestamp");
+        stringColumn.put("unit", "milli");
+        assertThrows(ConfigException.class, () -> plugin.transaction(
+                newConfig().set("columns", Collections.singletonList(stringColumn)), inputSchema, (taskSource, outputSchema) -> {}));
+
+        Map<String, String> longColumn = inputColumn("long_value", "string");
+        longColumn.put("unit", "milli");
+        assertThrows(ConfigException.class, () -> plugin.transaction(
+                newConfig().set("columns", Collections.singletonList(longColumn)), inputSchema, (taskSource, outputSchema) -> {}));
+
+        Map<String, String> jsonPathColumn = inputColumn("$.json_value.a", "timestamp");
+        jsonPathColumn.put("unit", "milli");
+        assertThrows(ConfigException.class, () -> plugin.transaction(
+                newConfig().set("columns", Collections.singletonList(jsonPathColumn)), inputSchema, (taskSource, outputSchema) -> {}));
+    }
+
+    @Test
+    public void testWideSchema()
+    {
+        int columnCount = 5000;
+        List<Column> inputColumns = new ArrayList<>();
+        List<Map<String, String>> columnConfigs = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            inputColumns.add(new Column(i, "c" + i, Types.LONG));
+            if (i % 2 == 0) {
+                columnConfigs.add(inputColumn("c" + i, "string"));
+            }
+        }
+        inputColumns.add(new Column(columnCount, "json_value", Types.JSON));
+        columnConfigs.add(inputColumn("$.json_value.a", "long"));
+        columnConfigs.add(inputColumn("$.json_value.b", "string"));
+        Schema inputSchema = new Schema(inputColumns);
+
+        TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+        plugin.transaction(newConfig().set("columns", columnConfigs), inputSchema, (taskSource, outputSchema) -> {
+            assertEquals(columnCount + 1, outputSchema.getColumnCount());
+            for (int i = 0; i < columnCount; i++) {
+                assertEquals("c" + i, outputSchema.getColumnName(i));
+                assertEquals(i % 2 == 0 ? Types.STRING : Types.LONG, outputSchema.getColumnType(i));
+            }
+            assertEquals(Types.JSON, outputSchema.getColumnType(columnCount));
+        });
+    }
+}
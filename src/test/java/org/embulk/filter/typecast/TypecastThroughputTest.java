@@ -0,0 +1,282 @@
+package org.embulk.filter.typecast;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.spi.Column;
+import org.embulk.spi.Exec;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageBuilder;
+import org.embulk.spi.PageOutput;
+import org.embulk.spi.Schema;
+import org.embulk.spi.time.Timestamp;
+import org.embulk.spi.type.Type;
+import org.embulk.spi.type.Types;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.msgpack.value.ImmutableValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+// End-to-end throughput of the filter: synthetic pages are pushed through the PageOutput returned
+// by open(), and rows/s and bytes/s of the input are reported.
+//
+// Skipped unless -Dtypecast.throughput=true is given, for example:
+//   ./gradlew test --tests '*TypecastThroughputTest' -Dtypecast.throughput=true -Dtypecast.throughput.width=50
+//
+// Knobs (system properties with the prefix typecast.throughput.):
+//   columns:       comma separated input:output types, repeated up to width. "-" as output passes the
+//                  column through, "path" casts $.<column>.k0 of a json column to long
+//   width:         number of columns
+//   records:       records per round
+//   rounds:        rounds, the first half of which warm up
+//   null_ratio:    ratio of null cells
+//   invalid_ratio: ratio of string cells which cannot be cast
+//   json_size:     number of keys of json cells
+//   batch_mode:    batch_mode of the filter
+//   parallelism:   parallelism of the filter
+public class TypecastThroughputTest
+{
+    private static final Logger logger = LoggerFactory.getLogger(TypecastThroughputTest.class);
+    private static final String PREFIX = "typecast.throughput.";
+    private static final String DEFAULT_COLUMNS = "string:long,string:double,string:timestamp,string:boolean,"
+            + "timestamp:string,long:double,double:long,json:path,json:string,string:-";
+
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    private static String property(String name, String defaultValue)
+    {
+        return System.getProperty(PREFIX + name, defaultValue);
+    }
+
+    private static Type toType(String name)
+    {
+        switch (name) {
+            case "boolean":
+                return Types.BOOLEAN;
+            case "long":
+                return Types.LONG;
+            case "double":
+                return Types.DOUBLE;
+            case "string":
+                return Types.STRING;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            case "json":
+                return Types.JSON;
+            default:
+                throw new IllegalArgumentException("unknown type: " + name);
+        }
+    }
+
+    private static Map<String, String> column(String name, String type)
+    {
+        Map<String, String> column = new HashMap<>();
+        column.put("name", name);
+        column.put("type", type);
+        return column;
+    }
+
+    @Test
+    public void testThroughput()
+    {
+        Assume.assumeTrue("set -Dtypecast.throughput=true to run", Boolean.getBoolean("typecast.throughput"));
+
+        String[] pairs = property("columns", DEFAULT_COLUMNS).split(",");
+        int width = Integer.parseInt(property("width", String.valueOf(pairs.length)));
+        int records = Integer.parseInt(property("records", "200000"));
+        int rounds = Integer.parseInt(property("rounds", "6"));
+        double nullRatio = Double.parseDouble(property("null_ratio", "0.05"));
+        double invalidRatio = Double.parseDouble(property("invalid_ratio", "0.0"));
+        int jsonSize = Integer.parseInt(property("json_size", "10"));
+
+        List<Column> columns = new ArrayList<>();
+        String[] outputTypes = new String[width];
+        List<Map<String, String>> columnConfigs = new ArrayList<>();
+        for (int i = 0; i < width; i++) {
+            String[] pair = pairs[i % pairs.length].trim().split(":");
+            String name = "c" + i;
+            columns.add(new Column(i, name, toType(pair[0])));
+            outputTypes[i] = pair[1];
+            if (pair[1].equals("path")) {
+                columnConfigs.add(column(String.format("$.%s.k0", name), "long"));
+            }
+            else if (!pair[1].equals("-")) {
+                columnConfigs.add(column(name, pair[1]));
+            }
+        }
+        Schema inputSchema = new Schema(columns);
+        ConfigSource config = ConfigMapperFactory.withDefault().newConfigSource();
+        config.set("columns", columnConfigs);
+        config.set("batch_mode", Boolean.parseBoolean(property("batch_mode", "false")));
+        config.set("parallelism", Integer.parseInt(property("parallelism", "1")));
+
+        TypecastFilterPlugin plugin = new TypecastFilterPlugin();
+        plugin.transaction(config, inputSchema, (taskSource, outputSchema) -> {
+            for (int round = 0; round < rounds; round++) {
+                Random random = new Random(round);
+                List<Page> pages = buildPages(inputSchema, outputTypes, records, nullRatio, invalidRatio, jsonSize, random);
+                long bytes = 0;
+                for (Page page : pages) {
+                    bytes += pageBytes(page);
+                }
+                PageOutput output = plugin.open(taskSource, inputSchema, outputSchema, new DiscardingOutput());
+                long start = System.nanoTime();
+                for (Page page : pages) {
+                    output.add(page);
+                }
+                output.finish();
+                long elapsed = System.nanoTime() - start;
+                output.close();
+                logger.info(String.format(Locale.ENGLISH,
+                        "typecast throughput%s: round %d, %d columns, %d rows in %.1f ms, %.0f rows/s, %.1f MB/s",
+                        round < rounds / 2 ? " (warm-up)" : "", round, width, records, elapsed / 1e6,
+                        records * 1e9 / elapsed, bytes * 1e9 / elapsed / (1024 * 1024)));
+            }
+        });
+    }
+
+    // bytes of the fixed-length part, plus characters of strings and json cells
+    @SuppressWarnings("deprecation") // Page.buffer() has no replacement to measure a page
+    private static long pageBytes(Page page)
+    {
+        long bytes = page.buffer().limit();
+        for (String string : page.getStringReferences()) {
+            bytes += string.length();
+        }
+        for (ImmutableValue value : page.getValueReferences()) {
+            bytes += value.toJson().length();
+        }
+        return bytes;
+    }
+
+    private static List<Page> buildPages(Schema schema, String[] outputTypes, int records,
+                                         double nullRatio, double invalidRatio, int jsonSize, Random random)
+    {
+        List<Page> pages = new ArrayList<>();
+        PageBuilder pageBuilder = new PageBuilder(Exec.getBufferAllocator(), schema, new CollectingOutput(pages));
+        for (int i = 0; i < records; i++) {
+            for (Column column : schema.getColumns()) {
+                if (random.nextDouble() < nullRatio) {
+                    pageBuilder.setNull(column);
+                    continue;
+                }
+                String outputType = outputTypes[column.getIndex()];
+                Type type = column.getType();
+                if (type.equals(Types.BOOLEAN)) {
+                    pageBuilder.setBoolean(column, random.nextBoolean());
+                }
+                else if (type.equals(Types.LONG)) {
+                    pageBuilder.setLong(column, outputType.equals("boolean") ? random.nextInt(2) : random.nextInt(1000000));
+                }
+                else if (type.equals(Types.DOUBLE)) {
+                    pageBuilder.setDouble(column, random.nextInt(1000000) / 100.0);
+                }
+                else if (type.equals(Types.STRING)) {
+                    boolean invalid = random.nextDouble() < invalidRatio;
+                    pageBuilder.setString(column, invalid ? "invalid-" + random.nextInt(1000) : stringValue(outputType, random));
+                }
+                else if (type.equals(Types.TIMESTAMP)) {
+                    pageBuilder.setTimestamp(column, Timestamp.ofEpochSecond(1463084053L + random.nextInt(86400), random.nextInt(1000) * 1000000));
+                }
+                else {
+                    pageBuilder.setJson(column, jsonValue(jsonSize, random));
+                }
+            }
+            pageBuilder.addRecord();
+        }
+        pageBuilder.finish();
+        pageBuilder.close();
+        return pages;
+    }
+
+    // strings which can be cast to the output type
+    private static String stringValue(String outputType, Random random)
+    {
+        switch (outputType) {
+            case "boolean":
+                return random.nextBoolean() ? "true" : "false";
+            case "long":
+                return String.valueOf(random.nextInt(1000000));
+            case "double":
+                return String.valueOf(random.nextInt(1000000) / 100.0);
+            case "timestamp":
+                int second = random.nextInt(86400);
+                return String.format("2016-05-12 %02d:%02d:%02d.%06d +0000",
+                        second / 3600, second / 60 % 60, second % 60, random.nextInt(1000000));
+            case "json":
+                return jsonValue(3, random).toJson();
+            default:
+                return "value-" + random.nextInt(1000000);
+        }
+    }
+
+    // {"k0":"<number>","k1":<number>,...}
+    private static Value jsonValue(int size, Random random)
+    {
+        Value[] keyValues = new Value[size * 2];
+        for (int i = 0; i < size; i++) {
+            keyValues[i * 2] = ValueFactory.newString("k" + i);
+            keyValues[i * 2 + 1] = i % 2 == 0
+                    ? ValueFactory.newString(String.valueOf(random.nextInt(1000000)))
+                    : ValueFactory.newInteger(random.nextInt(1000000));
+        }
+        return ValueFactory.newMap(keyValues);
+    }
+
+    private static class CollectingOutput implements PageOutput
+    {
+        private final List<Page> pages;
+
+        CollectingOutput(List<Page> pages)
+        {
+            this.pages = pages;
+        }
+
+        @Override
+        public void add(Page page)
+        {
+            pages.add(page);
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private static class DiscardingOutput implements PageOutput
+    {
+        @Override
+        public void add(Page page)
+        {
+            page.release();
+        }
+
+        @Override
+        public void finish()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.embulk.filter.typecast.cast;
+
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestBooleanMatcher
+{
+    @Test
+    public void matchDefault()
+    {
+        for (String str : StringCast.TRUE_STRINGS) {
+            assertEquals(Boolean.TRUE, StringCast.DEFAULT_BOOLEAN_MATCHER.match(str));
+        }
+        for (String str : StringCast.FALSE_STRINGS) {
+            assertEquals(Boolean.FALSE, StringCast.DEFAULT_BOOLEAN_MATCHER.match(str));
+        }
+        assertNull(StringCast.DEFAULT_BOOLEAN_MATCHER.match("foo"));
+        assertNull(StringCast.DEFAULT_BOOLEAN_MATCHER.match("tRUE"));
+        assertNull(StringCast.DEFAULT_BOOLEAN_MATCHER.match(""));
+        assertNull(StringCast.DEFAULT_BOOLEAN_MATCHER.match("truefalse"));
+    }
+
+    @Test
+    public void matchCustom()
+    {
+        BooleanMatcher matcher = new BooleanMatcher(Arrays.asList("active", "Y"), Arrays.asList("inactive", "N"), false);
+        assertEquals(Boolean.TRUE, matcher.match("active"));
+        assertEquals(Boolean.TRUE, matcher.match("Y"));
+        assertEquals(Boolean.FALSE, matcher.match("inactive"));
+        assertEquals(Boolean.FALSE, matcher.match("N"));
+        assertNull(matcher.match("Active"));
+        assertNull(matcher.match("true"));
+    }
+
+    @Test
+    public void matchIgnoreCase()
+    {
+        BooleanMatcher matcher = new BooleanMatcher(Arrays.asList("yes", "\u306f\u3044"), Arrays.asList("no", ""), true);
+        assertEquals(Boolean.TRUE, matcher.match("YES"));
+        assertEquals(Boolean.TRUE, matcher.match("yEs"));
+        assertEquals(Boolean.TRUE, matcher.match("\u306f\u3044"));
+        assertEquals(Boolean.FALSE, matcher.match("No"));
+        assertEquals(Boolean.FALSE, matcher.match(""));
+        assertNull(matcher.match("nope"));
+    }
+
+    @Test
+    public void conflict()
+    {
+        new BooleanMatcher(Arrays.asList("yes", "yes"), Collections.singletonList("no"), false);
+        new BooleanMatcher(Collections.singletonList("yes"), Collections.singletonList("YES"), false);
+        try {
+            new BooleanMatcher(Collections.singletonList("yes"), Collections.singletonList("YES"), true);
+            fail();
+        } catch (Throwable t) {
+            assertTrue(t instanceof ConfigException);
+        }
+    }
+}
@@ -46,4 +46,17 @@ public class TestDoubleCast
         Timestamp expected = Timestamp.ofEpochSecond(1, 500000000);
         assertEquals(expected, DoubleCast.asTimestamp(1.5));
     }
+
+    @Test
+    public void asTimestampWithUnit()
+    {
+        assertEquals(Timestamp.ofEpochSecond(1, 500000000), DoubleCast.asTimestamp(1500.0, EpochUnit.MILLI));
+        assertEquals(Timestamp.ofEpochSecond(-1, 999999500), DoubleCast.asTimestamp(-0.5, EpochUnit.MICRO));
+    }
+
+    @Test(expected = DataException.class)
+    public void asTimestampWithUnitOutOfRange()
+    {
+        DoubleCast.asTimestamp(1e19, EpochUnit.NANO);
+    }
 }
@@ -0,0 +1,55 @@
+package org.embulk.filter.typecast.cast;
+
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TestJsonScanner
+{
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void scanValid()
+    {
+        String[] jsons = {
+            "{}", "[]", " { } ", "0", "-0", "1.5e-3", "-12E+2", "\"\"", "\"a\\\"\\\\\\/\\b\\f\\n\\r\\t\\u00e9\"",
+            "true", "false", "null", "{\"a\":{\"b\":[1,[2,[3]],{}]}}", "[ 1 , \"x\" , [ ] ]",
+            // extensions which JsonParser enables
+            "NaN", "Infinity", "-Infinity", "[NaN, -Infinity]", "\"\t\"",
+        };
+        for (String json : jsons) {
+            assertNotNull(json, JsonScanner.scan(json));
+        }
+    }
+
+    @Test
+    public void scanInvalid()
+    {
+        String[] jsons = {
+            "", " ", "{", "]", "{\"a\"}", "{\"a\":}", "{\"a\":1,}", "[1,]", "[1 2]", "{1:2}", "01", "1.", ".5", "-",
+            "1e", "tru", "nul", "\"a", "\"\\x\"", "\"\\u12\"", "\"\\u12g4\"", "{} {}", "[1]]", "NaNx", "-NaN", "INF",
+        };
+        for (String json : jsons) {
+            assertNull(json, JsonScanner.scan(json));
+        }
+    }
+
+    @Test
+    public void build()
+    {
+        String[] jsons = {
+            "{}", "[[],{}]", "-12", "3.25", "\"a\\n\\u00e9\\ud83d\\ude00\"", "null", "\"\"",
+            "{\"a\": {\"b\": [1, [2, [3]], {\"c\": true, \"d\": false}]}, \"e\": \"f\", \"g\": 1e-3}",
+            "[Infinity, -Infinity]", "\"a\tb\"", "{\"a\": 1, \"a\": 2}",
+            "[9223372036854775807, -9223372036854775808, 9223372036854775808, 18446744073709551616]",
+        };
+        for (String json : jsons) {
+            assertEquals(json, StringCast.asJson(json), JsonScanner.build(json, JsonScanner.scan(json)));
+        }
+    }
+}
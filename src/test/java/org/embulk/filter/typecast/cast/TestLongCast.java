@@ -5,6 +5,7 @@ import org.embulk.spi.time.Timestamp;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class TestLongCast
 {
@@ -31,6 +32,11 @@ public class TestLongCast
     public void asString()
     {
         assertEquals("1", LongCast.asString(1));
+        assertEquals("-128", LongCast.asString(-128));
+        assertEquals("-129", LongCast.asString(-129));
+        assertEquals("1023", LongCast.asString(1023));
+        assertEquals("1024", LongCast.asString(1024));
+        assertSame(LongCast.asString(200), LongCast.asString(200));
     }
 
     @Test(expected = DataException.class)
@@ -45,4 +51,18 @@ public class TestLongCast
         Timestamp expected = Timestamp.ofEpochSecond(1);
         assertEquals(expected, LongCast.asTimestamp(1));
     }
+
+    @Test
+    public void asTimestampWithUnit()
+    {
+        assertEquals(Timestamp.ofEpochSecond(1, 500000000), LongCast.asTimestamp(1500, EpochUnit.MILLI));
+        assertEquals(Timestamp.ofEpochSecond(-1, 999999000), LongCast.asTimestamp(-1, EpochUnit.MICRO));
+        assertEquals(Timestamp.ofEpochSecond(-9223372037L, 145224192), LongCast.asTimestamp(Long.MIN_VALUE, EpochUnit.NANO));
+    }
+
+    @Test(expected = DataException.class)
+    public void asTimestampWithUnitOutOfRange()
+    {
+        LongCast.asTimestamp(Long.MAX_VALUE, EpochUnit.SECOND);
+    }
 }
@@ -14,6 +14,7 @@ import org.msgpack.value.ValueFactory;
 import java.time.ZoneId;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -75,6 +76,37 @@ public class TestStringCast
         }
     }
 
+    @Test
+    public void tryAsLong()
+    {
+        String[] valids = {"0", "1", "-1", "+1", "007", "9223372036854775807", "-9223372036854775808", "\u0661\u0662"};
+        for (String str : valids) {
+            long[] result = new long[1];
+            assertTrue(str, StringCast.tryAsLong(str, result));
+            assertEquals(str, Long.parseLong(str), result[0]);
+        }
+        String[] invalids = {"", "-", "+", "1.5", "foo", " 1", "1 ", "9223372036854775808", "-9223372036854775809", "1-"};
+        for (String str : invalids) {
+            assertFalse(str, StringCast.tryAsLong(str, new long[1]));
+        }
+    }
+
+    @Test
+    public void tryAsDouble()
+    {
+        String[] valids = {"1", "1.5", "-1.5", "+.5", "1.", " 1.5 ", "1e10", "1.5E-3", "1d", "1.5f",
+                "NaN", "-Infinity", "0x1p3", "0x1.8P1"};
+        for (String str : valids) {
+            double[] result = new double[1];
+            assertTrue(str, StringCast.tryAsDouble(str, result));
+            assertEquals(str, Double.parseDouble(str), result[0], 0.0);
+        }
+        String[] invalids = {"", " ", "-", ".", "foo", "1e", "1e+", "1.5.5", "1dd", "NaNd", "Infinity1", "0x1", "1,5"};
+        for (String str : invalids) {
+            assertFalse(str, StringCast.tryAsDouble(str, new double[1]));
+        }
+    }
+
     @Test
     public void asString()
     {
@@ -93,6 +125,54 @@ public class TestStringCast
         assertEquals(value, StringCast.asJson("{\"k\":\"v\"}"));
     }
 
+    @Test
+    public void asLazyJson()
+    {
+        String json = "{ \"k\" : [1, 2.5, \"v\", null, true] }";
+        Value value = StringCast.asLazyJson(json);
+        assertTrue(value.isMapValue());
+        assertEquals("{\"k\":[1,2.5,\"v\",null,true]}", value.toJson());
+        assertEquals(StringCast.asJson(json), value);
+        try {
+            StringCast.asLazyJson("{\"k\":}");
+            fail();
+        }
+        catch (DataException ex) {
+        }
+    }
+
+    // lazy_json accepts the same strings as JsonParser, and builds the same values
+    @Test
+    public void asLazyJsonAsAsJson()
+    {
+        String[] jsons = {
+            "{}", " [ 1 , -0 , 1E2 , 0.10 , 9223372036854775808 ] ", "\"\\u00e9\\/\\ud83d\\ude00\u00e9\"", "\"a\tb\\u0001\"",
+            "{\"a\" : {\"b\" : [true, false, null]}, \"a\" : 1e400}", "NaN", "[Infinity, -Infinity]", "+INF", "-INF",
+            "{} {}", "[1]]", "1 x", "1x", "", " ", "{", "[1,]", "{\"a\":}", "01", "nul", "\"\\x\"", "INF", "-NaN",
+        };
+        for (String json : jsons) {
+            Value expected;
+            try {
+                expected = StringCast.asJson(json);
+            }
+            catch (DataException ex) {
+                try {
+                    StringCast.asLazyJson(json);
+                    fail(json);
+                }
+                catch (DataException lazyEx) {
+                }
+                continue;
+            }
+            Value actual = StringCast.asLazyJson(json);
+            assertEquals(json, expected.getValueType(), actual.getValueType());
+            assertEquals(json, expected.toJson(), actual.toJson());
+            if (!json.contains("NaN")) { // NaN is not equal to itself
+                assertEquals(json, expected, actual);
+            }
+        }
+    }
+
     @Test
     public void asTimestamp()
     {
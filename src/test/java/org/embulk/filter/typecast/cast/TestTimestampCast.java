@@ -43,6 +43,26 @@ public class TestTimestampCast
         assertEquals(unixtimestamp, TimestampCast.asDouble(timestamp), 0.0);
     }
 
+    @Test
+    public void asLongWithUnit()
+    {
+        assertEquals(1463084053500L, TimestampCast.asLong(timestamp, EpochUnit.MILLI));
+        assertEquals(1463084053500000000L, TimestampCast.asLong(timestamp, EpochUnit.NANO));
+        assertEquals(-1L, TimestampCast.asLong(Timestamp.ofEpochSecond(-1, 999999999), EpochUnit.MICRO));
+    }
+
+    @Test(expected = DataException.class)
+    public void asLongWithUnitOutOfRange()
+    {
+        TimestampCast.asLong(Timestamp.ofEpochSecond(9223372037L), EpochUnit.NANO);
+    }
+
+    @Test
+    public void asDoubleWithUnit()
+    {
+        assertEquals(1463084053500.0, TimestampCast.asDouble(timestamp, EpochUnit.MILLI), 0.0);
+    }
+
     @Test
     public void asString()
     {